@@ -2,10 +2,12 @@ package com.emailsub;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
+@EnableAsync
 public class EmailSubscriptionManagerApplication {
     public static void main(String[] args) {
         SpringApplication.run(EmailSubscriptionManagerApplication.class, args);
@@ -0,0 +1,237 @@
+package com.emailsub.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// The one place outbound HTTP clients come from. All clients share a Reactor Netty connection
+// provider, which keeps a pool per remote host: the API hosts we call constantly get larger pools
+// and HTTP/2, arbitrary hosts (unsubscribe links) a small HTTP/1.1 pool. Every client asks for gzip,
+// applies the connect, read and response timeouts, retries 429/503 answers after their Retry-After,
+// and records an http.outbound.requests timer per host and endpoint.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HttpClientFactory {
+
+    private static final String METRIC = "http.outbound.requests";
+    private static final String EXTERNAL = "external";
+    // Path segments that are ids (Gmail message ids, account ids, numbers) rather than endpoint names
+    private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F_-]{16,}|.{41,}");
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.http.connect-timeout-ms}")
+    private int connectTimeoutMs;
+
+    @Value("${app.http.read-timeout-ms}")
+    private long readTimeoutMs;
+
+    @Value("${app.http.response-timeout-ms}")
+    private long responseTimeoutMs;
+
+    @Value("${app.http.api-max-connections}")
+    private int apiMaxConnections;
+
+    @Value("${app.http.external-max-connections}")
+    private int externalMaxConnections;
+
+    @Value("${app.http.max-idle-ms}")
+    private long maxIdleMs;
+
+    @Value("${app.http.max-in-memory-size}")
+    private int maxInMemorySize;
+
+    @Value("${app.http.retry.max-attempts}")
+    private int retryMaxAttempts;
+
+    @Value("${app.http.retry.max-wait-ms}")
+    private long retryMaxWaitMs;
+
+    @Value("${app.http.http2-hosts}")
+    private Set<String> http2Hosts;
+
+    private ConnectionProvider connectionProvider;
+    private ReactorClientHttpConnector http2Connector;
+    private ReactorClientHttpConnector http11Connector;
+    private WebClient externalClient;
+    private final Map<String, WebClient> clients = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        ConnectionProvider.Builder pools = ConnectionProvider.builder("outbound")
+                .maxConnections(externalMaxConnections)
+                .maxIdleTime(Duration.ofMillis(maxIdleMs))
+                .evictInBackground(Duration.ofMillis(maxIdleMs))
+                .pendingAcquireTimeout(Duration.ofMillis(responseTimeoutMs));
+        for (String host : http2Hosts) {
+            pools.forRemoteHost(InetSocketAddress.createUnresolved(host, 443),
+                    spec -> spec.maxConnections(apiMaxConnections));
+        }
+        connectionProvider = pools.build();
+
+        http2Connector = new ReactorClientHttpConnector(httpClient()
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .secure());
+        http11Connector = new ReactorClientHttpConnector(httpClient());
+        externalClient = build(http11Connector, null, true);
+    }
+
+    @PreDestroy
+    void dispose() {
+        connectionProvider.dispose();
+    }
+
+    // Client for one of our API hosts. Cached per base URL; callers add per-user headers with
+    // mutate(), which keeps the pooled connector.
+    public WebClient client(String baseUrl) {
+        return clients.computeIfAbsent(baseUrl, url -> {
+            String host = URI.create(url).getHost();
+            return build(http2Hosts.contains(host) ? http2Connector : http11Connector, url, false);
+        });
+    }
+
+    // Client for arbitrary absolute URLs, such as unsubscribe links
+    public WebClient external() {
+        return externalClient;
+    }
+
+    private HttpClient httpClient() {
+        return HttpClient.create(connectionProvider)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                // Maximum time between reads once the request is sent, so a stalled stream fails
+                // without limiting how long a large body may take overall
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+    }
+
+    private WebClient build(ReactorClientHttpConnector connector, String baseUrl, boolean external) {
+        WebClient.Builder builder = WebClient.builder()
+                .clientConnector(connector)
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxInMemorySize))
+                .filter(retryFilter())
+                .filter(metricsFilter(external));
+        if (baseUrl != null) builder.baseUrl(baseUrl);
+        return builder.build();
+    }
+
+    // Inner to the retry filter, so every attempt is timed on its own
+    private ExchangeFilterFunction metricsFilter(boolean external) {
+        return (request, next) -> {
+            long start = System.nanoTime();
+            return next.exchange(request)
+                    .timeout(Duration.ofMillis(responseTimeoutMs))
+                    .doOnSuccess(response -> record(request, external, start,
+                            response != null ? String.valueOf(response.statusCode().value()) : "NONE"))
+                    .doOnError(e -> record(request, external, start, "IO_ERROR"));
+        };
+    }
+
+    private void record(ClientRequest request, boolean external, long start, String status) {
+        Timer.builder(METRIC)
+                .tag("host", external ? EXTERNAL : String.valueOf(request.url().getHost()))
+                .tag("endpoint", external ? EXTERNAL : endpoint(request.url().getPath()))
+                .tag("method", request.method().name())
+                .tag("status", status)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String endpoint(String path) {
+        if (path == null || path.isEmpty()) return "/";
+        StringJoiner endpoint = new StringJoiner("/", "/", "");
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) continue;
+            endpoint.add(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+        }
+        return endpoint.toString();
+    }
+
+    // 429 and 503 are retried after the server's Retry-After, or an exponential backoff without one.
+    // A Retry-After longer than max-wait is handed back to the caller as is. Requests that failed to
+    // connect are retried only when idempotent.
+    private ExchangeFilterFunction retryFilter() {
+        return (request, next) -> exchange(request, next, 1);
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, int attempt) {
+        return next.exchange(request)
+                .flatMap(response -> {
+                    int status = response.statusCode().value();
+                    if (attempt >= retryMaxAttempts || (status != HttpStatus.TOO_MANY_REQUESTS.value()
+                            && status != HttpStatus.SERVICE_UNAVAILABLE.value())) {
+                        return Mono.just(response);
+                    }
+                    long waitMs = retryAfterMillis(response, attempt);
+                    if (waitMs > retryMaxWaitMs) return Mono.just(response);
+
+                    log.debug("{} {} answered {}, retrying in {} ms", request.method(), request.url().getHost(),
+                            status, waitMs);
+                    return response.releaseBody()
+                            .then(Mono.delay(Duration.ofMillis(waitMs)))
+                            .then(exchange(request, next, attempt + 1));
+                })
+                .onErrorResume(WebClientRequestException.class, e -> {
+                    if (attempt >= retryMaxAttempts || !isIdempotent(request.method())) return Mono.error(e);
+                    return Mono.delay(Duration.ofMillis(backoffMillis(attempt)))
+                            .then(exchange(request, next, attempt + 1));
+                });
+    }
+
+    private long retryAfterMillis(ClientResponse response, int attempt) {
+        String retryAfter = response.headers().asHttpHeaders().getFirst("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                try {
+                    ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+                } catch (Exception ignored) {
+                    // Unparseable, fall back to the backoff
+                }
+            }
+        }
+        return backoffMillis(attempt);
+    }
+
+    private long backoffMillis(int attempt) {
+        return 500L << (attempt - 1);
+    }
+
+    private boolean isIdempotent(HttpMethod method) {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.PUT
+                || method == HttpMethod.DELETE || method == HttpMethod.OPTIONS;
+    }
+}
@@ -1,5 +1,6 @@
 package com.emailsub.controller;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.User;
 import com.emailsub.repository.UserRepository;
 import com.emailsub.security.JwtTokenProvider;
@@ -10,7 +11,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -24,6 +24,7 @@ public class AuthController {
     private final UserRepository userRepository;
     private final JwtTokenProvider jwtTokenProvider;
     private final ObjectMapper objectMapper;
+    private final HttpClientFactory httpClients;
 
     @Value("${spring.security.oauth2.client.registration.google.client-id}")
     private String googleClientId;
@@ -68,8 +69,7 @@ public class AuthController {
         String code = body.get("code");
         try {
             // Exchange code for tokens
-            WebClient client = WebClient.create("https://oauth2.googleapis.com");
-            String tokenResponse = client.post()
+            String tokenResponse = httpClients.client("https://oauth2.googleapis.com").post()
                     .uri("/token")
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .bodyValue("code=" + code +
@@ -87,8 +87,7 @@ public class AuthController {
             int expiresIn = tokens.path("expires_in").asInt(3600);
 
             // Get user info
-            WebClient userClient = WebClient.create("https://www.googleapis.com");
-            String userInfo = userClient.get()
+            String userInfo = httpClients.client("https://www.googleapis.com").get()
                     .uri("/oauth2/v3/userinfo")
                     .header("Authorization", "Bearer " + accessToken)
                     .retrieve()
@@ -129,8 +128,7 @@ public class AuthController {
     public ResponseEntity<Map<String, Object>> handleMicrosoftCallback(@RequestBody Map<String, String> body) {
         String code = body.get("code");
         try {
-            WebClient client = WebClient.create("https://login.microsoftonline.com");
-            String tokenResponse = client.post()
+            String tokenResponse = httpClients.client("https://login.microsoftonline.com").post()
                     .uri("/common/oauth2/v2.0/token")
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .bodyValue("code=" + code +
@@ -149,8 +147,7 @@ public class AuthController {
             int expiresIn = tokens.path("expires_in").asInt(3600);
 
             // Get user info from Graph
-            WebClient graphClient = WebClient.create("https://graph.microsoft.com/v1.0");
-            String userInfo = graphClient.get()
+            String userInfo = httpClients.client("https://graph.microsoft.com/v1.0").get()
                     .uri("/me?$select=displayName,mail,userPrincipalName")
                     .header("Authorization", "Bearer " + accessToken)
                     .retrieve()
@@ -158,8 +155,8 @@ public class AuthController {
                     .block();
 
             JsonNode userJson = objectMapper.readTree(userInfo);
-            String email = userJson.path("mail").asText();
-            if (email.isEmpty()) email = userJson.path("userPrincipalName").asText();
+            String mail = userJson.path("mail").asText();
+            String email = mail.isEmpty() ? userJson.path("userPrincipalName").asText() : mail;
             String name = userJson.path("displayName").asText();
 
             User user = userRepository.findByEmail(email).orElseGet(() ->
@@ -28,11 +28,35 @@ public class SubscriptionController {
         return ResponseEntity.ok(subscriptionService.getDashboard(user.getId()));
     }
 
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> list(
+            @AuthenticationPrincipal User user,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String accountType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return page(user, null, status, accountType, cursor, limit);
+    }
+
     @GetMapping("/category/{category}")
     public ResponseEntity<Map<String, Object>> getByCategory(
             @AuthenticationPrincipal User user,
-            @PathVariable String category) {
-        return ResponseEntity.ok(subscriptionService.getSubscriptionsByCategory(user.getId(), category));
+            @PathVariable String category,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String accountType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        return page(user, category, status, accountType, cursor, limit);
+    }
+
+    private ResponseEntity<Map<String, Object>> page(User user, String category, String status,
+                                                     String accountType, String cursor, Integer limit) {
+        try {
+            return ResponseEntity.ok(subscriptionService.getSubscriptionsPage(
+                    user.getId(), category, status, accountType, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @PostMapping("/scan/gmail")
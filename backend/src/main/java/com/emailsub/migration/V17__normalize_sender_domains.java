@@ -0,0 +1,169 @@
+package com.emailsub.migration;
+
+import com.emailsub.service.DomainNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Rekeys rows written before community senders were keyed on the registrable domain: community
+// senders, user_subscriptions.sender_domain and queued domains that are still full hosts
+// (email.amazon.com) move to their registrable domain (amazon.com), and rows that now share a key
+// are merged into one. A Java migration, run by Flyway as a Spring bean, so it normalizes exactly
+// as DomainNormalizer does at runtime, subdomain overrides included.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class V17__normalize_sender_domains extends BaseJavaMigration {
+
+    private final DomainNormalizer domainNormalizer;
+
+    private record Sender(UUID id, String domain, int verifiedCount) {
+    }
+
+    private record QueueItem(UUID id, String domain, String status, int demand) {
+    }
+
+    @Override
+    public void migrate(Context context) {
+        JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+
+        int senders = mergeCommunitySenders(jdbc);
+        int subscriptions = rekeySubscriptions(jdbc);
+        int queued = mergeQueue(jdbc);
+
+        // Anything not yet linked that now matches a community sender is linked, as
+        // CommunitySenderLinker would have done had the keys matched from the start
+        int linked = jdbc.update(
+                "UPDATE user_subscriptions us SET community_sender_id = cs.id, " +
+                "effective_category = COALESCE(NULLIF(us.custom_category, ''), cs.category) " +
+                "FROM community_senders cs " +
+                "WHERE us.community_sender_id IS NULL AND us.sender_domain = cs.domain");
+        // Nothing left to categorize for those domains
+        jdbc.update("DELETE FROM categorization_queue q WHERE q.status = 'pending' " +
+                "AND EXISTS (SELECT 1 FROM community_senders cs WHERE cs.domain = q.domain)");
+
+        if (senders + subscriptions + queued + linked > 0) {
+            jdbc.update("UPDATE dashboard_summaries SET stale = true");
+        }
+        log.info("Normalized sender domains: {} community senders, {} subscriptions, {} queue items rekeyed, " +
+                "{} subscriptions linked", senders, subscriptions, queued, linked);
+    }
+
+    // The row already stored under the registrable domain survives, otherwise the most verified one;
+    // the others' subscriptions, corrections and votes move to it before they are deleted
+    private int mergeCommunitySenders(JdbcTemplate jdbc) {
+        Map<String, List<Sender>> byKey = new HashMap<>();
+        jdbc.query("SELECT id, domain, verified_count FROM community_senders ORDER BY created_at", rs -> {
+            Sender sender = new Sender(rs.getObject("id", UUID.class), rs.getString("domain"),
+                    rs.getInt("verified_count"));
+            String key = domainNormalizer.registrableDomain(sender.domain());
+            byKey.computeIfAbsent(key != null ? key : sender.domain(), k -> new ArrayList<>()).add(sender);
+        });
+
+        int rekeyed = 0;
+        for (Map.Entry<String, List<Sender>> group : byKey.entrySet()) {
+            String key = group.getKey();
+            List<Sender> members = group.getValue();
+            if (members.size() == 1 && members.get(0).domain().equals(key)) continue;
+
+            Sender survivor = members.stream()
+                    .filter(s -> s.domain().equals(key))
+                    .findFirst()
+                    .orElseGet(() -> Collections.max(members, Comparator.comparingInt(Sender::verifiedCount)));
+
+            for (Sender merged : members) {
+                if (merged == survivor) continue;
+                jdbc.update("UPDATE user_subscriptions SET community_sender_id = ? WHERE community_sender_id = ?",
+                        survivor.id(), merged.id());
+                jdbc.update("UPDATE user_corrections SET community_sender_id = ? WHERE community_sender_id = ?",
+                        survivor.id(), merged.id());
+                jdbc.update("INSERT INTO sender_category_votes (community_sender_id, category, votes) " +
+                        "SELECT ?, category, votes FROM sender_category_votes WHERE community_sender_id = ? " +
+                        "ON CONFLICT (community_sender_id, category) " +
+                        "DO UPDATE SET votes = sender_category_votes.votes + EXCLUDED.votes",
+                        survivor.id(), merged.id());
+                jdbc.update("UPDATE community_senders s SET " +
+                        "verified_count = s.verified_count + m.verified_count, " +
+                        "correction_count = s.correction_count + m.correction_count " +
+                        "FROM community_senders m WHERE s.id = ? AND m.id = ?",
+                        survivor.id(), merged.id());
+                jdbc.update("DELETE FROM community_senders WHERE id = ?", merged.id());
+            }
+            if (!survivor.domain().equals(key)) {
+                jdbc.update("UPDATE community_senders SET domain = ? WHERE id = ?", key, survivor.id());
+            }
+
+            // Subscriptions without a custom category follow the surviving sender's category
+            jdbc.update("UPDATE user_subscriptions us SET effective_category = cs.category " +
+                    "FROM community_senders cs WHERE cs.id = ? AND us.community_sender_id = cs.id " +
+                    "AND (us.custom_category IS NULL OR us.custom_category = '')", survivor.id());
+            rekeyed += members.size();
+        }
+        return rekeyed;
+    }
+
+    private int rekeySubscriptions(JdbcTemplate jdbc) {
+        List<String> domains = jdbc.queryForList(
+                "SELECT DISTINCT sender_domain FROM user_subscriptions WHERE sender_domain IS NOT NULL", String.class);
+        int rekeyed = 0;
+        for (String domain : domains) {
+            String key = domainNormalizer.registrableDomain(domain);
+            if (key == null || key.equals(domain)) continue;
+            rekeyed += jdbc.update("UPDATE user_subscriptions SET sender_domain = ? WHERE sender_domain = ?",
+                    key, domain);
+        }
+        return rekeyed;
+    }
+
+    // Open items (pending or processing) that now share a domain become one: a processing item is
+    // kept over a pending one, then the most demanded; waiters move over and demand is recounted
+    private int mergeQueue(JdbcTemplate jdbc) {
+        Map<String, List<QueueItem>> openByKey = new HashMap<>();
+        Map<String, String> keys = new HashMap<>();
+        int rekeyed = 0;
+
+        List<QueueItem> items = jdbc.query("SELECT id, domain, status, demand FROM categorization_queue",
+                (rs, rowNum) -> new QueueItem(rs.getObject("id", UUID.class), rs.getString("domain"),
+                        rs.getString("status"), rs.getInt("demand")));
+        for (QueueItem item : items) {
+            String key = keys.computeIfAbsent(item.domain(), d -> {
+                String normalized = domainNormalizer.registrableDomain(d);
+                return normalized != null ? normalized : d;
+            });
+            if ("pending".equals(item.status()) || "processing".equals(item.status())) {
+                openByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+            } else if (!key.equals(item.domain())) {
+                jdbc.update("UPDATE categorization_queue SET domain = ? WHERE id = ?", key, item.id());
+                rekeyed++;
+            }
+        }
+
+        for (Map.Entry<String, List<QueueItem>> group : openByKey.entrySet()) {
+            String key = group.getKey();
+            List<QueueItem> members = group.getValue();
+            if (members.size() == 1 && members.get(0).domain().equals(key)) continue;
+
+            QueueItem survivor = Collections.max(members, Comparator
+                    .comparing((QueueItem item) -> "processing".equals(item.status()))
+                    .thenComparingInt(QueueItem::demand));
+            for (QueueItem merged : members) {
+                if (merged == survivor) continue;
+                jdbc.update("INSERT INTO categorization_queue_waiters (queue_id, user_id) " +
+                        "SELECT ?, user_id FROM categorization_queue_waiters WHERE queue_id = ? ON CONFLICT DO NOTHING",
+                        survivor.id(), merged.id());
+                jdbc.update("DELETE FROM categorization_queue WHERE id = ?", merged.id());
+            }
+            jdbc.update("UPDATE categorization_queue SET domain = ?, " +
+                    "demand = (SELECT COUNT(*) FROM categorization_queue_waiters WHERE queue_id = ?) WHERE id = ?",
+                    key, survivor.id(), survivor.id());
+            rekeyed += members.size();
+        }
+        return rekeyed;
+    }
+}
@@ -39,6 +39,12 @@ public class CategorizationQueue {
     @Column(name = "priority")
     private int priority = 5;
 
+    // Distinct users waiting on this domain. Only ever incremented in the database, see
+    // AiCategorizationService.addAllToQueue, so entity saves must not write it back.
+    @Column(name = "demand", updatable = false)
+    @Builder.Default
+    private int demand = 0;
+
     @Column(name = "attempts")
     private int attempts = 0;
 
@@ -57,6 +63,9 @@ public class CategorizationQueue {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
 
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt; // set while processing; expired leases are reclaimed
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
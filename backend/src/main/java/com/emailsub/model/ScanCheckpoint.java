@@ -0,0 +1,83 @@
+package com.emailsub.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "scan_checkpoints",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "account_type"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScanCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "sync_log_id")
+    private SyncLog syncLog; // run that last wrote this checkpoint
+
+    @Column(name = "account_type", nullable = false)
+    private String accountType; // gmail, outlook
+
+    @Column(name = "sync_type")
+    private String syncType; // full, delta
+
+    @Column(name = "page_token", columnDefinition = "TEXT")
+    private String pageToken; // Gmail pageToken or Graph @odata.nextLink of the next page to read
+
+    @Column(name = "start_history_id")
+    private String startHistoryId; // Gmail delta scans only
+
+    @Column(name = "history_id")
+    private String historyId; // Gmail historyId to store once the scan completes
+
+    @Column(name = "sender_map", columnDefinition = "TEXT")
+    private String senderMap; // JSON of the senders aggregated so far
+
+    @Column(name = "emails_scanned")
+    @Builder.Default
+    private int emailsScanned = 0;
+
+    @Column(name = "pages_processed")
+    @Builder.Default
+    private int pagesProcessed = 0;
+
+    // Scan run that owns the row and until when; only written by ScanCheckpointRepository's
+    // claim, renewLease and release, never by entity saves
+    @Column(name = "locked_by", insertable = false, updatable = false)
+    private UUID lockedBy;
+
+    @Column(name = "lease_expires_at", insertable = false, updatable = false)
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
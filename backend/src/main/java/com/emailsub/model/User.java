@@ -42,8 +42,8 @@ public class User {
     @Column(name = "gmail_token_expiry")
     private LocalDateTime gmailTokenExpiry;
 
-    @Column(name = "gmail_sync_token", columnDefinition = "TEXT")
-    private String gmailSyncToken;
+    @Column(name = "gmail_history_id")
+    private String gmailHistoryId; // mailbox historyId recorded by the last successful scan
 
     @Column(name = "gmail_last_sync")
     private LocalDateTime gmailLastSync;
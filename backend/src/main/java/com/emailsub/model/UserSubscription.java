@@ -36,6 +36,9 @@ public class UserSubscription {
     @Column(name = "sender_name")
     private String senderName;
 
+    @Column(name = "sender_domain")
+    private String senderDomain;
+
     @Column(name = "total_email_count")
     private int totalEmailCount = 0;
 
@@ -72,6 +75,9 @@ public class UserSubscription {
     @Column(name = "custom_category")
     private String customCategory;
 
+    @Column(name = "effective_category")
+    private String effectiveCategory; // custom category, else the community sender's, else "Other"
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -82,16 +88,15 @@ public class UserSubscription {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        if (customCategory != null && !customCategory.isEmpty()) effectiveCategory = customCategory;
+        else if (communitySender != null) effectiveCategory = communitySender.getCategory();
+        else effectiveCategory = "Other";
     }
 
+    // effective_category is not recomputed here: that would load the lazy communitySender on every
+    // save. Whoever changes customCategory sets it too.
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
-
-    public String getEffectiveCategory() {
-        if (customCategory != null && !customCategory.isEmpty()) return customCategory;
-        if (communitySender != null) return communitySender.getCategory();
-        return "Other";
-    }
 }
@@ -2,21 +2,53 @@ package com.emailsub.repository;
 
 import com.emailsub.model.CategorizationQueue;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface CategorizationQueueRepository extends JpaRepository<CategorizationQueue, UUID> {
 
-    @Query("SELECT cq FROM CategorizationQueue cq WHERE cq.status = 'pending' " +
-           "AND cq.attempts < cq.maxAttempts ORDER BY cq.priority ASC, cq.createdAt ASC")
-    List<CategorizationQueue> findPendingItems();
+    // Atomically claims up to n pending items for this worker, most-demanded first so each LLM call
+    // settles as many users' uncategorized senders as possible. Rows another node or worker has
+    // locked are skipped rather than waited on, so concurrent claims never return the same item.
+    @Transactional
+    @Query(value = "UPDATE categorization_queue SET status = 'processing', attempts = attempts + 1, " +
+                   "lease_expires_at = now() + make_interval(secs => :leaseSeconds) " +
+                   "WHERE id IN (SELECT id FROM categorization_queue " +
+                   "WHERE status = 'pending' AND attempts < max_attempts " +
+                   "ORDER BY priority ASC, demand DESC, created_at ASC LIMIT :n FOR UPDATE SKIP LOCKED) " +
+                   "RETURNING *",
+           nativeQuery = true)
+    List<CategorizationQueue> claimPendingItems(@Param("n") int n, @Param("leaseSeconds") int leaseSeconds);
 
-    Optional<CategorizationQueue> findByDomainAndStatus(String domain, String status);
+    // Puts items whose worker died mid-call back in the queue while they have attempts left
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE categorization_queue SET status = 'pending', lease_expires_at = NULL, " +
+                   "error_message = 'Lease expired while processing' " +
+                   "WHERE status = 'processing' AND lease_expires_at < now() AND attempts < max_attempts",
+           nativeQuery = true)
+    int releaseExpiredLeases();
 
-    boolean existsByDomainAndStatusIn(String domain, List<String> statuses);
+    // Atomically fails the expired items that are out of attempts and returns them, so exactly one
+    // node finishes each the way a worker would after a final failed attempt
+    @Transactional
+    @Query(value = "UPDATE categorization_queue SET status = 'failed', assigned_category = 'Other', " +
+                   "lease_expires_at = NULL, error_message = 'Lease expired while processing' " +
+                   "WHERE status = 'processing' AND lease_expires_at < now() AND attempts >= max_attempts " +
+                   "RETURNING *",
+           nativeQuery = true)
+    List<CategorizationQueue> failExpiredLeases();
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM categorization_queue_waiters WHERE queue_id IN (:ids)", nativeQuery = true)
+    int deleteWaiters(@Param("ids") Collection<UUID> ids);
 }
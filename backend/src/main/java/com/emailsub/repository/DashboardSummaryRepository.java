@@ -0,0 +1,27 @@
+package com.emailsub.repository;
+
+import com.emailsub.model.DashboardSummary;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface DashboardSummaryRepository extends JpaRepository<DashboardSummary, UUID> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT ds FROM DashboardSummary ds WHERE ds.userId = :userId")
+    Optional<DashboardSummary> findByIdForUpdate(@Param("userId") UUID userId);
+
+    @Modifying
+    @Query(value = "UPDATE dashboard_summaries SET stale = true WHERE user_id IN " +
+                   "(SELECT us.user_id FROM user_subscriptions us WHERE us.community_sender_id = :senderId)",
+           nativeQuery = true)
+    int markStaleForCommunitySender(@Param("senderId") UUID senderId);
+}
@@ -0,0 +1,56 @@
+package com.emailsub.repository;
+
+import com.emailsub.model.ScanCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ScanCheckpointRepository extends JpaRepository<ScanCheckpoint, UUID> {
+    Optional<ScanCheckpoint> findByUserIdAndAccountType(UUID userId, String accountType);
+
+    // Creates the account's checkpoint row for this scan run, or takes the existing row over when
+    // no other run holds it or that run's lease has run out. Returns 0 while another scan of the
+    // same account still owns the row.
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO scan_checkpoints (id, user_id, account_type, sync_type, emails_scanned, " +
+                   "pages_processed, created_at, updated_at, locked_by, lease_expires_at) " +
+                   "VALUES (:id, :userId, :accountType, :syncType, 0, 0, :now, :now, :owner, :leaseUntil) " +
+                   "ON CONFLICT (user_id, account_type) DO UPDATE SET " +
+                   "locked_by = EXCLUDED.locked_by, lease_expires_at = EXCLUDED.lease_expires_at " +
+                   "WHERE scan_checkpoints.locked_by IS NULL OR scan_checkpoints.lease_expires_at < :now",
+           nativeQuery = true)
+    int claim(@Param("id") UUID id, @Param("userId") UUID userId, @Param("accountType") String accountType,
+              @Param("syncType") String syncType, @Param("now") LocalDateTime now, @Param("owner") UUID owner,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Returns 0 when the run no longer owns the row
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE scan_checkpoints SET lease_expires_at = :leaseUntil " +
+                   "WHERE id = :id AND locked_by = :owner",
+           nativeQuery = true)
+    int renewLease(@Param("id") UUID id, @Param("owner") UUID owner, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // A failed scan gives the row up, keeping its progress for the next scan to resume
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE scan_checkpoints SET locked_by = NULL, lease_expires_at = NULL " +
+                   "WHERE id = :id AND locked_by = :owner",
+           nativeQuery = true)
+    int release(@Param("id") UUID id, @Param("owner") UUID owner);
+
+    // Only the run that owns the row may delete it
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM scan_checkpoints WHERE id = :id AND locked_by = :owner", nativeQuery = true)
+    int discard(@Param("id") UUID id, @Param("owner") UUID owner);
+}
@@ -0,0 +1,47 @@
+package com.emailsub.repository;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Read-only projection of a subscription holding only the columns the dashboard and list views
+// render; category is the stored effective_category
+public record SubscriptionView(
+        UUID id,
+        String senderEmail,
+        String senderName,
+        int emailCount30days,
+        int totalEmailCount,
+        String status,
+        String accountType,
+        String category,
+        String unsubscribeType,
+        boolean hasUnsubscribeLink,
+        LocalDateTime lastEmailAt,
+        LocalDateTime unsubscribedAt) {
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("senderEmail", senderEmail);
+        map.put("senderName", senderName);
+        map.put("emailCount30days", emailCount30days);
+        map.put("totalEmailCount", totalEmailCount);
+        map.put("status", status);
+        map.put("accountType", accountType);
+        map.put("category", category);
+        map.put("unsubscribeType", unsubscribeType);
+        map.put("hasUnsubscribeLink", hasUnsubscribeLink);
+        map.put("lastEmailAt", lastEmailAt);
+        map.put("unsubscribedAt", unsubscribedAt);
+        map.put("frequency", frequencyLabel(emailCount30days));
+        return map;
+    }
+
+    private static String frequencyLabel(int count) {
+        if (count > 20) return "20+ emails recently";
+        if (count >= 10) return "10-20 emails recently";
+        return "10 or fewer emails recently";
+    }
+}
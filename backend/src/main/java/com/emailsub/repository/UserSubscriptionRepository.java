@@ -2,16 +2,19 @@ package com.emailsub.repository;
 
 import com.emailsub.model.UserSubscription;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface UserSubscriptionRepository extends JpaRepository<UserSubscription, UUID> {
+public interface UserSubscriptionRepository extends JpaRepository<UserSubscription, UUID>,
+        UserSubscriptionRepositoryCustom {
 
     List<UserSubscription> findByUserId(UUID userId);
 
@@ -25,15 +28,23 @@ public interface UserSubscriptionRepository extends JpaRepository<UserSubscripti
     boolean existsByUserIdAndSenderEmailAndAccountType(
             UUID userId, String senderEmail, String accountType);
 
-    @Query("SELECT us FROM UserSubscription us JOIN FETCH us.communitySender cs " +
-           "WHERE us.user.id = :userId ORDER BY us.emailCount30days DESC")
-    List<UserSubscription> findByUserIdWithSender(@Param("userId") UUID userId);
-
-    @Query("SELECT us FROM UserSubscription us WHERE us.user.id = :userId " +
-           "AND (us.customCategory = :category OR " +
-           "(us.customCategory IS NULL AND us.communitySender.category = :category))")
-    List<UserSubscription> findByUserIdAndCategory(
-            @Param("userId") UUID userId, @Param("category") String category);
-
     long countByUserIdAndStatus(UUID userId, String status);
+
+    // Propagates a community sender's new category to every subscription without a custom one
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserSubscription us SET us.effectiveCategory = :category " +
+           "WHERE us.communitySender.id = :senderId " +
+           "AND (us.customCategory IS NULL OR us.customCategory = '')")
+    int updateEffectiveCategoryForSender(@Param("senderId") UUID senderId, @Param("category") String category);
+
+    // Attaches all not yet linked subscriptions of a domain, across users, to its community sender
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE user_subscriptions SET community_sender_id = :senderId, " +
+                   "effective_category = COALESCE(NULLIF(custom_category, ''), :category), updated_at = now() " +
+                   "WHERE sender_domain = :domain AND community_sender_id IS NULL",
+           nativeQuery = true)
+    int linkToCommunitySender(@Param("domain") String domain, @Param("senderId") UUID senderId,
+                              @Param("category") String category);
 }
@@ -0,0 +1,13 @@
+package com.emailsub.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface UserSubscriptionRepositoryCustom {
+
+    // One keyset page ordered by emailCount30days DESC, id. Null filters are left out of the
+    // query entirely, so each combination runs against the matching (user_id, ...) index.
+    // afterCount/afterId are the sort key of the last row of the previous page, null for the first.
+    List<SubscriptionView> findPage(UUID userId, String category, String status, String accountType,
+                                    Integer afterCount, UUID afterId, int limit);
+}
@@ -0,0 +1,64 @@
+package com.emailsub.repository;
+
+import com.emailsub.model.UserSubscription;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class UserSubscriptionRepositoryCustomImpl implements UserSubscriptionRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<SubscriptionView> findPage(UUID userId, String category, String status, String accountType,
+                                           Integer afterCount, UUID afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<SubscriptionView> query = cb.createQuery(SubscriptionView.class);
+        Root<UserSubscription> us = query.from(UserSubscription.class);
+        Path<String> effectiveCategory = us.get("effectiveCategory");
+
+        Expression<Boolean> hasUnsubscribeLink = cb.<Boolean>selectCase()
+                .when(cb.or(cb.isNotNull(us.get("unsubscribeLink")), cb.isNotNull(us.get("unsubscribeMailto"))), true)
+                .otherwise(false);
+
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(us.get("user").get("id"), userId));
+        // Same as the dashboard: only senders linked to a community sender are listed
+        where.add(cb.isNotNull(us.get("communitySender")));
+        if (status != null) where.add(cb.equal(us.get("status"), status));
+        if (accountType != null) where.add(cb.equal(us.get("accountType"), accountType));
+        if (category != null) where.add(cb.equal(effectiveCategory, category));
+        if (afterCount != null && afterId != null) {
+            Path<Integer> count = us.get("emailCount30days");
+            Path<UUID> id = us.get("id");
+            where.add(cb.or(
+                    cb.lessThan(count, afterCount),
+                    cb.and(cb.equal(count, afterCount), cb.greaterThan(id, afterId))));
+        }
+
+        query.select(cb.construct(SubscriptionView.class,
+                        us.get("id"),
+                        us.get("senderEmail"),
+                        us.get("senderName"),
+                        us.get("emailCount30days"),
+                        us.get("totalEmailCount"),
+                        us.get("status"),
+                        us.get("accountType"),
+                        effectiveCategory,
+                        us.get("unsubscribeType"),
+                        hasUnsubscribeLink,
+                        us.get("lastEmailAt"),
+                        us.get("unsubscribedAt")))
+                .where(where.toArray(new Predicate[0]))
+                .orderBy(cb.desc(us.get("emailCount30days")), cb.asc(us.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
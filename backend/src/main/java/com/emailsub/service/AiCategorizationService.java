@@ -1,23 +1,33 @@
 package com.emailsub.service;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.CategorizationQueue;
 import com.emailsub.model.CommunitySender;
 import com.emailsub.repository.CategorizationQueueRepository;
 import com.emailsub.repository.CommunitySenderRepository;
+import com.emailsub.service.ProviderRouter.Provider;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -26,7 +36,12 @@ public class AiCategorizationService {
 
     private final CategorizationQueueRepository queueRepository;
     private final CommunitySenderRepository communitySenderRepository;
+    private final CommunitySenderCache communitySenderCache;
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LocalCategoryClassifier localClassifier;
+    private final HttpClientFactory httpClients;
+    private final JdbcTemplate jdbcTemplate;
 
     @Value("${app.ai.groq.api-key}")
     private String groqApiKey;
@@ -52,70 +67,211 @@ public class AiCategorizationService {
     @Value("${app.ai.cloudflare.base-url}")
     private String cloudflareBaseUrl;
 
-    private static final List<String> VALID_CATEGORIES = Arrays.asList(
+    private static final int QUEUE_CHUNK_SIZE = 1000;
+
+    // Inference matches the partial unique index on open items' domains. The DO UPDATE only bumps
+    // demand when the user is not waiting yet; rows it skips are not returned, so no waiter is added.
+    private static final String ENQUEUE_ROW = "(?, ?, ?, ?, ?, 'pending', 5, 0, 3, 1, ?)";
+    private static final String ENQUEUE_SQL =
+            "WITH upserted AS (" +
+            "INSERT INTO categorization_queue (id, domain, sender_name, sender_email, sample_subjects, status, " +
+            "priority, attempts, max_attempts, demand, created_at) VALUES %s " +
+            "ON CONFLICT (domain) WHERE status IN ('pending', 'processing') " +
+            "DO UPDATE SET demand = categorization_queue.demand + 1 " +
+            "WHERE NOT EXISTS (SELECT 1 FROM categorization_queue_waiters w " +
+            "WHERE w.queue_id = categorization_queue.id AND w.user_id = ?) " +
+            "RETURNING id) " +
+            "INSERT INTO categorization_queue_waiters (queue_id, user_id) " +
+            "SELECT id, ? FROM upserted ON CONFLICT DO NOTHING";
+
+    static final List<String> VALID_CATEGORIES = Arrays.asList(
             "Jobs", "Finance", "Shopping", "Learning", "News",
             "Social", "Travel", "Health", "Entertainment", "Other"
     );
 
-    @Scheduled(fixedDelayString = "${app.categorization.queue-process-delay-ms}")
-    public void processQueue() {
-        List<CategorizationQueue> pendingItems = queueRepository.findPendingItems();
-        if (pendingItems.isEmpty()) return;
+    @Value("${app.categorization.workers}")
+    private int workerCount;
+
+    @Value("${app.categorization.batch-size}")
+    private int batchSize;
+
+    @Value("${app.categorization.lease-seconds}")
+    private int leaseSeconds;
+
+    @Value("${app.ai.groq.requests-per-minute}")
+    private int groqRequestsPerMinute;
+
+    @Value("${app.ai.gemini.requests-per-minute}")
+    private int geminiRequestsPerMinute;
+
+    @Value("${app.ai.cloudflare.requests-per-minute}")
+    private int cloudflareRequestsPerMinute;
+
+    @Value("${app.ai.timeout-ms}")
+    private long timeoutMs;
+
+    @Value("${app.ai.circuit-breaker.failure-threshold}")
+    private int breakerFailureThreshold;
+
+    @Value("${app.ai.circuit-breaker.open-seconds}")
+    private long breakerOpenSeconds;
+
+    @Value("${app.ai.hedge.min-delay-ms}")
+    private long hedgeMinDelayMs;
+
+    @Value("${app.ai.hedge.default-delay-ms}")
+    private long hedgeDefaultDelayMs;
+
+    // Providers in fallback order; each is only called when its own bucket has a token
+    private ProviderRouter router;
+    private ExecutorService workerPool;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
 
-        // Process one at a time to respect rate limits
-        CategorizationQueue item = pendingItems.get(0);
-        processItem(item);
+    // category and the provider that assigned it
+    private record Categorized(String category, String provider) {
     }
 
-    private void processItem(CategorizationQueue item) {
-        item.setStatus("processing");
-        item.setAttempts(item.getAttempts() + 1);
-        queueRepository.save(item);
+    @PostConstruct
+    void startWorkers() {
+        router = new ProviderRouter(List.of(
+                new Provider("groq", new TokenBucket(groqRequestsPerMinute), this::callGroq),
+                new Provider("gemini", new TokenBucket(geminiRequestsPerMinute), this::callGemini),
+                new Provider("cloudflare", new TokenBucket(cloudflareRequestsPerMinute), this::callCloudflare)
+        ), Duration.ofMillis(timeoutMs), breakerFailureThreshold, Duration.ofSeconds(breakerOpenSeconds),
+                Duration.ofMillis(hedgeMinDelayMs), Duration.ofMillis(hedgeDefaultDelayMs));
+        AtomicInteger threadNumber = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "categorization-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        try {
-            String prompt = buildPrompt(item);
-            String category = null;
-            String provider = null;
+    @PreDestroy
+    void stopWorkers() {
+        workerPool.shutdownNow();
+    }
+
+    // Hands batches of pending items to idle workers; each worker keeps claiming batches until
+    // the queue is empty. Run by the slow poll and by DatabaseNotificationListener on NOTIFY,
+    // one at a time so both never hand out the same idle workers.
+    @Scheduled(fixedDelayString = "${app.categorization.queue-process-delay-ms}")
+    public synchronized void processQueue() {
+        failExpiredLeases();
+        int released = queueRepository.releaseExpiredLeases();
+        if (released > 0) log.warn("Released {} categorization items with expired leases", released);
+
+        // Every circuit is open: leave the queue alone until one goes half-open, rather than claim
+        // items only to hand them straight back
+        long paused = router.nanosUntilAnyAllowed();
+        if (paused > 0) {
+            log.debug("All AI provider circuits open, not claiming for another {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(paused));
+            return;
+        }
+
+        int idle = workerCount - activeWorkers.get();
+        if (idle <= 0) return;
+
+        List<CategorizationQueue> claimed = claimPendingItems(idle * batchSize);
+        for (int from = 0; from < claimed.size(); from += batchSize) {
+            List<CategorizationQueue> batch = claimed.subList(from, Math.min(from + batchSize, claimed.size()));
+            activeWorkers.incrementAndGet();
+            workerPool.execute(() -> drainQueue(batch));
+        }
+    }
+
+    // Items whose worker died on their last attempt end like any other final failure: categorized
+    // as Other in the community DB, and nobody waits on them any more
+    private void failExpiredLeases() {
+        List<CategorizationQueue> exhausted = queueRepository.failExpiredLeases();
+        if (exhausted.isEmpty()) return;
 
-            // Try Groq first
+        log.warn("Failed {} categorization items whose lease expired on their last attempt", exhausted.size());
+        for (CategorizationQueue item : exhausted) {
             try {
-                category = callGroq(prompt);
-                provider = "groq";
-                log.info("Groq categorized {} as {}", item.getDomain(), category);
+                saveToCommunityDB(item, "Other", "fallback");
             } catch (Exception e) {
-                log.warn("Groq failed for {}: {}", item.getDomain(), e.getMessage());
+                log.error("Error saving fallback category for {}: {}", item.getDomain(), e.getMessage());
             }
+        }
+        queueRepository.deleteWaiters(exhausted.stream().map(CategorizationQueue::getId).toList());
+    }
 
-            // Fallback to Gemini
-            if (category == null) {
-                try {
-                    category = callGemini(prompt);
-                    provider = "gemini";
-                    log.info("Gemini categorized {} as {}", item.getDomain(), category);
-                } catch (Exception e) {
-                    log.warn("Gemini failed for {}: {}", item.getDomain(), e.getMessage());
+    private void drainQueue(List<CategorizationQueue> first) {
+        try {
+            List<CategorizationQueue> batch = first;
+            while (!batch.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                if (!processBatch(batch)) {
+                    // The next poll or NOTIFY after a circuit goes half-open picks the queue up again
+                    log.warn("All AI provider circuits open, worker stops draining the queue");
+                    break;
                 }
+                batch = claimPendingItems(batchSize);
+            }
+        } catch (Exception e) {
+            log.error("Categorization worker stopped: {}", e.getMessage());
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    // Safe across workers and backend replicas: the claim is a single UPDATE ... SKIP LOCKED
+    private List<CategorizationQueue> claimPendingItems(int n) {
+        if (n <= 0) return List.of();
+        return queueRepository.claimPendingItems(n, leaseSeconds);
+    }
+
+    // Returns false when no provider could be called at all because every circuit is open
+    private boolean processBatch(List<CategorizationQueue> items) {
+        List<CategorizationQueue> remaining = new ArrayList<>(items);
+        boolean providersAvailable = true;
+        try {
+            // Confident local classifications never reach an LLM
+            for (Iterator<CategorizationQueue> it = remaining.iterator(); it.hasNext(); ) {
+                CategorizationQueue item = it.next();
+                LocalCategoryClassifier.Classification local =
+                        localClassifier.classify(item.getDomain(), item.getSenderName());
+                if (local == null) continue;
+
+                log.info("Local {} categorized {} as {} ({})", local.source(), item.getDomain(),
+                        local.category(), String.format("%.2f", local.confidence()));
+                complete(item, local.category(), "local");
+                it.remove();
             }
 
-            // Fallback to Cloudflare
-            if (category == null) {
-                try {
-                    category = callCloudflare(prompt);
-                    provider = "cloudflare";
-                    log.info("Cloudflare categorized {} as {}", item.getDomain(), category);
-                } catch (Exception e) {
-                    log.warn("Cloudflare failed for {}: {}", item.getDomain(), e.getMessage());
+            // Each provider gets one go at whatever the previous ones could not categorize
+            Set<Provider> tried = new HashSet<>();
+            while (!remaining.isEmpty() && tried.size() < router.size()) {
+                Provider provider = router.acquire(tried);
+                if (provider == null) break; // every remaining provider's circuit is open
+                tried.add(provider);
+
+                Map<String, Categorized> categories = categorize(provider, remaining, tried, true);
+                for (Iterator<CategorizationQueue> it = remaining.iterator(); it.hasNext(); ) {
+                    CategorizationQueue item = it.next();
+                    Categorized categorized = categories.get(item.getDomain());
+                    if (categorized == null) continue;
+
+                    log.info("{} categorized {} as {}", categorized.provider(), item.getDomain(), categorized.category());
+                    complete(item, categorized.category(), categorized.provider());
+                    it.remove();
                 }
             }
 
-            if (category != null && isValidCategory(category)) {
-                saveToCommunityDB(item, category, provider);
-                item.setStatus("done");
-                item.setAssignedCategory(category);
-                item.setAiProvider(provider);
-                item.setProcessedAt(LocalDateTime.now());
-            } else {
-                // All providers failed or returned invalid category
+            if (tried.isEmpty() && !remaining.isEmpty()) {
+                // No provider could be called at all: not the items' fault, so the attempt is not counted
+                for (CategorizationQueue item : remaining) {
+                    item.setStatus("pending");
+                    item.setAttempts(item.getAttempts() - 1);
+                    item.setErrorMessage("All AI providers unavailable");
+                }
+                remaining.clear();
+                providersAvailable = false;
+            }
+
+            // All providers failed or returned invalid category
+            for (CategorizationQueue item : remaining) {
                 if (item.getAttempts() >= item.getMaxAttempts()) {
                     item.setStatus("failed");
                     item.setAssignedCategory("Other");
@@ -125,13 +281,103 @@ public class AiCategorizationService {
                 }
                 item.setErrorMessage("All AI providers failed or returned invalid category");
             }
+        } catch (InterruptedException e) {
+            // Shutting down while waiting for quota: give the unfinished items back untouched
+            Thread.currentThread().interrupt();
+            for (CategorizationQueue item : remaining) {
+                item.setStatus("pending");
+                item.setAttempts(item.getAttempts() - 1);
+            }
+        } catch (Exception e) {
+            log.error("Error processing categorization batch: {}", e.getMessage());
+            for (CategorizationQueue item : remaining) {
+                item.setStatus(item.getAttempts() >= item.getMaxAttempts() ? "failed" : "pending");
+                item.setErrorMessage(e.getMessage());
+            }
+        }
+
+        items.forEach(item -> item.setLeaseExpiresAt(null));
+        queueRepository.saveAll(items);
+
+        // Nobody waits on a finished item any more
+        List<UUID> finished = items.stream()
+                .filter(item -> "done".equals(item.getStatus()) || "failed".equals(item.getStatus()))
+                .map(CategorizationQueue::getId)
+                .toList();
+        if (!finished.isEmpty()) queueRepository.deleteWaiters(finished);
+        return providersAvailable;
+    }
+
+    private void complete(CategorizationQueue item, String category, String provider) {
+        try {
+            saveToCommunityDB(item, category, provider);
+            item.setStatus("done");
+            item.setAssignedCategory(category);
+            item.setAiProvider(provider);
+            item.setProcessedAt(LocalDateTime.now());
         } catch (Exception e) {
             log.error("Error processing queue item {}: {}", item.getId(), e.getMessage());
             item.setStatus(item.getAttempts() >= item.getMaxAttempts() ? "failed" : "pending");
             item.setErrorMessage(e.getMessage());
         }
+    }
+
+    // domain -> valid category for the items the provider, or the provider it was hedged with,
+    // could categorize. If neither returns a valid result for a batch, it is retried once on the
+    // provider as two half-size batches before the items move on to the next provider.
+    private Map<String, Categorized> categorize(Provider provider, List<CategorizationQueue> items,
+                                                Set<Provider> tried, boolean mayRetry) throws InterruptedException {
+        Map<String, Categorized> categories = new HashMap<>();
+        ProviderRouter.Routed<Map<String, String>> routed =
+                router.call(provider, tried, p -> request(p, items), result -> !result.isEmpty());
+        if (routed.hedge() != null) tried.add(routed.hedge());
+        if (routed.value() != null) {
+            routed.value().forEach((domain, category) ->
+                    categories.put(domain, new Categorized(category, routed.provider().name())));
+            return categories;
+        }
+
+        if (mayRetry && items.size() > 1) {
+            int half = items.size() / 2;
+            for (List<CategorizationQueue> part : List.of(items.subList(0, half), items.subList(half, items.size()))) {
+                if (!router.allowsCall(provider)) break;
+                awaitToken(provider);
+                categories.putAll(categorize(provider, part, tried, false));
+            }
+        }
+        return categories;
+    }
+
+    // A single item uses the short one-word prompt; a batch asks for a JSON object. Emits the valid
+    // categories by domain, or nothing when the reply holds none.
+    private Mono<Map<String, String>> request(Provider provider, List<CategorizationQueue> items) {
+        if (items.size() == 1) {
+            CategorizationQueue item = items.get(0);
+            return provider.call().apply(buildPrompt(item), 20).mapNotNull(reply -> {
+                String category = cleanCategory(reply);
+                if (category == null || !isValidCategory(category)) {
+                    log.warn("{} returned no valid category for {}: {}", provider.name(), item.getDomain(), category);
+                    return null;
+                }
+                return Map.of(item.getDomain(), normalizeCategory(category));
+            });
+        }
 
-        queueRepository.save(item);
+        return provider.call().apply(buildBatchPrompt(items), 20 + items.size() * 15).mapNotNull(reply -> {
+            Map<String, String> parsed = parseBatchResponse(reply, items);
+            if (parsed == null) {
+                log.warn("{} returned no JSON object for a batch of {}", provider.name(), items.size());
+            } else if (parsed.size() < items.size()) {
+                log.warn("{} categorized {} of {} domains", provider.name(), parsed.size(), items.size());
+            }
+            return parsed;
+        });
+    }
+
+    private void awaitToken(Provider provider) throws InterruptedException {
+        while (!provider.rateLimiter().tryAcquire()) {
+            TimeUnit.NANOSECONDS.sleep(Math.max(provider.rateLimiter().nanosUntilAvailable(), 1_000_000));
+        }
     }
 
     private String buildPrompt(CategorizationQueue item) {
@@ -148,77 +394,105 @@ public class AiCategorizationService {
         );
     }
 
-    private String callGroq(String prompt) {
-        WebClient client = WebClient.builder()
-                .baseUrl(groqBaseUrl)
-                .defaultHeader("Authorization", "Bearer " + groqApiKey)
-                .defaultHeader("Content-Type", "application/json")
-                .build();
+    private String buildBatchPrompt(List<CategorizationQueue> items) {
+        StringBuilder senders = new StringBuilder();
+        for (CategorizationQueue item : items) {
+            senders.append(String.format("- Domain: %s | Sender Name: %s | Recent Email Subjects: %s\n",
+                    item.getDomain(),
+                    item.getSenderName(),
+                    item.getSampleSubjects() != null ? item.getSampleSubjects() : "Not available"));
+        }
+        return "Categorize each of these email senders into exactly one category.\n\n" +
+               senders + "\n" +
+               "Available categories: Jobs, Finance, Shopping, Learning, News, Social, Travel, Health, Entertainment, Other\n\n" +
+               "Reply with ONLY a JSON object mapping every domain to its category name, " +
+               "like {\"example.com\": \"Shopping\"}, nothing else.";
+    }
+
+    // domain -> category for the valid entries, or null if the reply holds no JSON object.
+    // Models often wrap the object in a code fence or a sentence, so only the outermost braces are read.
+    private Map<String, String> parseBatchResponse(String response, List<CategorizationQueue> items) {
+        if (response == null) return null;
+        int open = response.indexOf('{');
+        int close = response.lastIndexOf('}');
+        if (open < 0 || close < open) return null;
+
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(response.substring(open, close + 1));
+        } catch (Exception e) {
+            return null;
+        }
+        if (!root.isObject()) return null;
+
+        Map<String, String> byDomain = new HashMap<>();
+        root.fields().forEachRemaining(e -> byDomain.put(e.getKey().trim().toLowerCase(), e.getValue().asText()));
+
+        Map<String, String> categories = new HashMap<>();
+        for (CategorizationQueue item : items) {
+            String category = cleanCategory(byDomain.get(item.getDomain().toLowerCase()));
+            if (category != null && isValidCategory(category)) {
+                categories.put(item.getDomain(), normalizeCategory(category));
+            }
+        }
+        return categories;
+    }
 
+    private Mono<String> callGroq(String prompt, int maxTokens) {
         Map<String, Object> body = Map.of(
                 "model", groqModel,
                 "messages", List.of(Map.of("role", "user", "content", prompt)),
-                "max_tokens", 20,
+                "max_tokens", maxTokens,
                 "temperature", 0.1
         );
 
-        String response = client.post()
+        return httpClients.client(groqBaseUrl).post()
                 .uri("/chat/completions")
+                .header("Authorization", "Bearer " + groqApiKey)
+                .header("Content-Type", "application/json")
                 .bodyValue(body)
                 .retrieve()
                 .bodyToMono(String.class)
-                .block();
-
-        return extractGroqResponse(response);
+                .mapNotNull(this::extractGroqResponse);
     }
 
-    private String callGemini(String prompt) {
-        WebClient client = WebClient.builder()
-                .baseUrl(geminiBaseUrl)
-                .build();
-
+    private Mono<String> callGemini(String prompt, int maxTokens) {
         Map<String, Object> body = Map.of(
                 "contents", List.of(Map.of(
                         "parts", List.of(Map.of("text", prompt))
-                ))
+                )),
+                "generationConfig", Map.of("maxOutputTokens", maxTokens)
         );
 
-        String response = client.post()
+        return httpClients.client(geminiBaseUrl).post()
                 .uri("/models/gemini-1.5-flash:generateContent?key=" + geminiApiKey)
                 .bodyValue(body)
                 .retrieve()
                 .bodyToMono(String.class)
-                .block();
-
-        return extractGeminiResponse(response);
+                .mapNotNull(this::extractGeminiResponse);
     }
 
-    private String callCloudflare(String prompt) {
-        WebClient client = WebClient.builder()
-                .baseUrl(cloudflareBaseUrl)
-                .defaultHeader("Authorization", "Bearer " + cloudflareApiKey)
-                .defaultHeader("Content-Type", "application/json")
-                .build();
-
+    private Mono<String> callCloudflare(String prompt, int maxTokens) {
         Map<String, Object> body = Map.of(
-                "messages", List.of(Map.of("role", "user", "content", prompt))
+                "messages", List.of(Map.of("role", "user", "content", prompt)),
+                "max_tokens", maxTokens
         );
 
-        String response = client.post()
+        return httpClients.client(cloudflareBaseUrl).post()
                 .uri("/" + cloudflareAccountId + "/ai/run/@cf/meta/llama-3-8b-instruct")
+                .header("Authorization", "Bearer " + cloudflareApiKey)
+                .header("Content-Type", "application/json")
                 .bodyValue(body)
                 .retrieve()
                 .bodyToMono(String.class)
-                .block();
-
-        return extractCloudflareResponse(response);
+                .mapNotNull(this::extractCloudflareResponse);
     }
 
     private String extractGroqResponse(String json) {
         try {
             JsonNode root = objectMapper.readTree(json);
-            return cleanCategory(root.path("choices").get(0)
-                    .path("message").path("content").asText());
+            return root.path("choices").get(0)
+                    .path("message").path("content").asText();
         } catch (Exception e) {
             return null;
         }
@@ -227,8 +501,8 @@ public class AiCategorizationService {
     private String extractGeminiResponse(String json) {
         try {
             JsonNode root = objectMapper.readTree(json);
-            return cleanCategory(root.path("candidates").get(0)
-                    .path("content").path("parts").get(0).path("text").asText());
+            return root.path("candidates").get(0)
+                    .path("content").path("parts").get(0).path("text").asText();
         } catch (Exception e) {
             return null;
         }
@@ -237,7 +511,7 @@ public class AiCategorizationService {
     private String extractCloudflareResponse(String json) {
         try {
             JsonNode root = objectMapper.readTree(json);
-            return cleanCategory(root.path("result").path("response").asText());
+            return root.path("result").path("response").asText();
         } catch (Exception e) {
             return null;
         }
@@ -274,34 +548,60 @@ public class AiCategorizationService {
                 .build();
 
         communitySenderRepository.save(sender);
+        communitySenderCache.invalidate(item.getDomain());
         log.info("Saved {} -> {} to community DB", item.getDomain(), category);
-    }
 
-    public void addToQueue(String domain, String senderName, String senderEmail, List<String> subjects) {
-        // Don't add if already in community DB
-        if (communitySenderRepository.existsByDomain(domain)) return;
+        eventPublisher.publishEvent(
+                new CommunitySenderCreatedEvent(sender.getId(), sender.getDomain(), sender.getCategory()));
+    }
 
-        // Don't add if already in queue
-        if (queueRepository.existsByDomainAndStatusIn(domain, List.of("pending", "processing", "done"))) return;
+    // Queues every sender whose domain has no open (pending or processing) item yet and counts the
+    // user as waiting on all of them, one INSERT ... ON CONFLICT per chunk: a new item starts with
+    // demand 1, an open one gains 1 unless the user already waits on it, and the waiter rows are
+    // written in the same statement. Callers resolve the community DB side beforehand; a domain whose
+    // item is done is in the community DB.
+    @Transactional
+    public void addAllToQueue(UUID userId, Collection<GmailScanService.SubscriptionData> senders) {
+        if (senders.isEmpty()) return;
+
+        // The same row cannot be upserted twice in one statement
+        Map<String, GmailScanService.SubscriptionData> byDomain = new LinkedHashMap<>();
+        for (GmailScanService.SubscriptionData data : senders) byDomain.putIfAbsent(data.domain, data);
+        List<GmailScanService.SubscriptionData> unique = new ArrayList<>(byDomain.values());
+
+        // Concurrent scans of the same user (Gmail and Outlook) would otherwise both see themselves as
+        // not yet waiting and count the user twice
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> {},
+                userId.getMostSignificantBits() ^ userId.getLeastSignificantBits());
+
+        LocalDateTime now = LocalDateTime.now();
+        int waiting = 0;
+        for (int from = 0; from < unique.size(); from += QUEUE_CHUNK_SIZE) {
+            List<GmailScanService.SubscriptionData> chunk =
+                    unique.subList(from, Math.min(from + QUEUE_CHUNK_SIZE, unique.size()));
+            StringJoiner values = new StringJoiner(", ");
+            List<Object> args = new ArrayList<>(chunk.size() * 6 + 2);
+            for (GmailScanService.SubscriptionData data : chunk) {
+                values.add(ENQUEUE_ROW);
+                args.add(UUID.randomUUID());
+                args.add(data.domain);
+                args.add(data.senderName);
+                args.add(data.senderEmail);
+                args.add(sampleSubjectsJson(new ArrayList<>(data.subjects)));
+                args.add(now);
+            }
+            args.add(userId);
+            args.add(userId);
+            waiting += jdbcTemplate.update(String.format(ENQUEUE_SQL, values), args.toArray());
+        }
+        log.debug("User {} now waiting on {} more queued domains", userId, waiting);
+    }
 
-        String subjectsJson = "[" + subjects.stream()
+    private String sampleSubjectsJson(List<String> subjects) {
+        return "[" + subjects.stream()
                 .limit(3)
                 .map(s -> "\"" + s.replace("\"", "'") + "\"")
                 .reduce((a, b) -> a + "," + b)
                 .orElse("") + "]";
-
-        CategorizationQueue item = CategorizationQueue.builder()
-                .domain(domain)
-                .senderName(senderName)
-                .senderEmail(senderEmail)
-                .sampleSubjects(subjectsJson)
-                .status("pending")
-                .priority(5)
-                .attempts(0)
-                .maxAttempts(3)
-                .build();
-
-        queueRepository.save(item);
-        log.info("Added {} to categorization queue", domain);
     }
 }
@@ -0,0 +1,7 @@
+package com.emailsub.service;
+
+import java.util.UUID;
+
+// Published once a user's correction of a community-linked subscription is saved
+public record CategoryCorrectedEvent(UUID communitySenderId, String category) {
+}
@@ -0,0 +1,207 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.repository.CommunitySenderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Bounded in-memory domain -> community sender cache. Unknown domains are cached as negative
+// entries with a shorter TTL so a later AI categorization shows up quickly. Entries are evicted
+// least-recently-used once max-size is reached, and invalidated when a sender changes, on every node
+// through DatabaseNotificationListener. A load that overlaps an invalidation is returned but not
+// cached, so it cannot put back the entry that was just dropped.
+@Component
+@Slf4j
+public class CommunitySenderCache {
+
+    private static final String CACHE_NAME = "communitySenders";
+    private static final int LOOKUP_CHUNK_SIZE = 1000; // keeps IN lists well below the bind parameter limit
+
+    private final CommunitySenderRepository communitySenderRepository;
+    private final DomainNormalizer domainNormalizer;
+    private final Map<String, Entry> entries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long generation; // bumped by every invalidation, guarded by entries
+
+    public CommunitySenderCache(CommunitySenderRepository communitySenderRepository,
+                                DomainNormalizer domainNormalizer,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.community-cache.max-size}") int maxSize,
+                                @Value("${app.community-cache.ttl-minutes}") long ttlMinutes,
+                                @Value("${app.community-cache.negative-ttl-minutes}") long negativeTtlMinutes) {
+        this.communitySenderRepository = communitySenderRepository;
+        this.domainNormalizer = domainNormalizer;
+        this.ttlMillis = ttlMinutes * 60_000;
+        this.negativeTtlMillis = negativeTtlMinutes * 60_000;
+
+        this.hits = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", CACHE_NAME).tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean evict = size() > maxSize;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+        Gauge.builder("cache.size", this, CommunitySenderCache::size).tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    public static class CachedSender {
+        private final UUID id;
+        private final String category;
+
+        CachedSender(CommunitySender sender) {
+            this.id = sender.getId();
+            this.category = sender.getCategory();
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+    }
+
+    // Domains are looked up by their registrable domain, the key community senders are stored under
+    public Optional<CachedSender> get(String domain) {
+        domain = domainNormalizer.registrableDomain(domain);
+        if (domain == null) return Optional.empty();
+
+        long now = System.currentTimeMillis();
+        Entry entry;
+        long loadGeneration;
+        synchronized (entries) {
+            entry = entries.get(domain);
+            loadGeneration = generation;
+        }
+        if (entry != null && entry.expiresAt > now) {
+            hits.increment();
+            return Optional.ofNullable(entry.sender);
+        }
+
+        misses.increment();
+        CachedSender sender = communitySenderRepository.findByDomain(domain)
+                .map(CachedSender::new)
+                .orElse(null);
+        put(domain, sender, now, loadGeneration);
+        return Optional.ofNullable(sender);
+    }
+
+    // Resolves many domains at once: cache hits are served from memory and all misses are loaded
+    // with one IN query per chunk. Unknown domains are absent from the result, which is keyed by the
+    // domains as passed in.
+    public Map<String, CachedSender> getAll(Collection<String> domains) {
+        Map<String, String> keys = new HashMap<>();
+        for (String domain : domains) {
+            String key = domainNormalizer.registrableDomain(domain);
+            if (key != null) keys.put(domain, key);
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, CachedSender> byKey = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        int cached = 0;
+        long loadGeneration;
+
+        synchronized (entries) {
+            loadGeneration = generation;
+            for (String domain : new LinkedHashSet<>(keys.values())) {
+                Entry entry = entries.get(domain);
+                if (entry != null && entry.expiresAt > now) {
+                    if (entry.sender != null) byKey.put(domain, entry.sender);
+                    cached++;
+                } else {
+                    missing.add(domain);
+                }
+            }
+        }
+        hits.increment(cached);
+        misses.increment(missing.size());
+
+        for (int from = 0; from < missing.size(); from += LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = missing.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, missing.size()));
+            Map<String, CachedSender> found = new HashMap<>();
+            for (CommunitySender sender : communitySenderRepository.findByDomainIn(chunk)) {
+                found.put(sender.getDomain(), new CachedSender(sender));
+            }
+            for (String domain : chunk) {
+                put(domain, found.get(domain), now, loadGeneration);
+            }
+            byKey.putAll(found);
+        }
+
+        Map<String, CachedSender> result = new HashMap<>();
+        keys.forEach((domain, key) -> {
+            CachedSender sender = byKey.get(key);
+            if (sender != null) result.put(domain, sender);
+        });
+        return result;
+    }
+
+    public boolean contains(String domain) {
+        return get(domain).isPresent();
+    }
+
+    public void invalidate(String domain) {
+        domain = domainNormalizer.registrableDomain(domain);
+        if (domain == null) return;
+        synchronized (entries) {
+            entries.remove(domain);
+            generation++;
+        }
+        log.debug("Invalidated community cache entry for {}", domain);
+    }
+
+    // Used when invalidations may have been missed, e.g. while the NOTIFY listener was reconnecting
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+        log.debug("Cleared community cache");
+    }
+
+    private void put(String domain, CachedSender sender, long now, long loadGeneration) {
+        Entry entry = new Entry(sender, now + (sender != null ? ttlMillis : negativeTtlMillis));
+        synchronized (entries) {
+            // Something was invalidated while this value was being loaded; it may be the old row
+            if (generation != loadGeneration) return;
+            entries.put(domain, entry);
+        }
+    }
+
+    private double size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        final CachedSender sender; // null for a negative entry
+        final long expiresAt;
+
+        Entry(CachedSender sender, long expiresAt) {
+            this.sender = sender;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.emailsub.service;
+
+import java.util.UUID;
+
+// Published once a new community sender row is saved
+public record CommunitySenderCreatedEvent(UUID communitySenderId, String domain, String category) {
+}
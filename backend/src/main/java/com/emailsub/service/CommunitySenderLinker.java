@@ -0,0 +1,29 @@
+package com.emailsub.service;
+
+import com.emailsub.repository.UserSubscriptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Links the existing subscriptions of every user to a community sender as soon as it is created,
+// instead of waiting for each user's next scan to reach that sender
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CommunitySenderLinker {
+
+    private final UserSubscriptionRepository subscriptionRepository;
+    private final DashboardSummaryService dashboardSummaryService;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCommunitySenderCreated(CommunitySenderCreatedEvent event) {
+        int linked = subscriptionRepository.linkToCommunitySender(
+                event.domain(), event.communitySenderId(), event.category());
+        if (linked == 0) return;
+
+        // The newly linked senders now show up on these users' dashboards
+        dashboardSummaryService.markStaleForCommunitySender(event.communitySenderId());
+        log.info("Linked {} existing subscriptions to community sender {}", linked, event.domain());
+    }
+}
@@ -0,0 +1,80 @@
+package com.emailsub.service;
+
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+// Non-blocking semaphore for reactive pipelines: a task subscribes only once a permit is free
+// and gives it back when it completes, errors or is cancelled. Waiters are served in FIFO order.
+public class ConcurrencyLimiter {
+
+    private final Object lock = new Object();
+    private final Queue<Permit> waiters = new ArrayDeque<>();
+    private int available;
+
+    public ConcurrencyLimiter(int maxConcurrency) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        this.available = maxConcurrency;
+    }
+
+    public <T> Flux<T> run(Supplier<? extends Publisher<T>> task) {
+        return Flux.defer(() -> {
+            Permit permit = new Permit();
+            return Mono.<Void>create(permit::acquire)
+                    .thenMany(Flux.defer(task))
+                    .doFinally(signal -> permit.release());
+        });
+    }
+
+    private void releasePermit() {
+        Permit next;
+        synchronized (lock) {
+            next = waiters.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+            next.acquired = true;
+        }
+        next.sink.success();
+    }
+
+    private class Permit {
+        MonoSink<Void> sink;
+        boolean acquired;
+        boolean released;
+
+        void acquire(MonoSink<Void> sink) {
+            boolean granted = false;
+            synchronized (lock) {
+                this.sink = sink;
+                if (available > 0) {
+                    available--;
+                    acquired = true;
+                    granted = true;
+                } else {
+                    waiters.add(this);
+                }
+            }
+            if (granted) sink.success();
+        }
+
+        void release() {
+            synchronized (lock) {
+                if (released) return;
+                released = true;
+                if (!acquired) {
+                    // Cancelled while still waiting, nothing to hand back
+                    waiters.remove(this);
+                    return;
+                }
+            }
+            releasePermit();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.repository.CommunitySenderRepository;
+import com.emailsub.repository.UserSubscriptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Community consensus on a sender's category from user corrections. Each correction bumps a
+// per-category counter in sender_category_votes; the consensus check reads those counters, one row
+// per category, off the request path.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CorrectionConsensusService {
+
+    // 10+ corrections of which at least 70% agree on one category
+    private static final int MIN_VOTES = 10;
+    private static final double MIN_AGREEMENT = 0.7;
+
+    private static final String VOTE_SQL =
+            "INSERT INTO sender_category_votes (community_sender_id, category, votes) VALUES (?, ?, 1) " +
+            "ON CONFLICT (community_sender_id, category) DO UPDATE SET votes = sender_category_votes.votes + 1";
+
+    private static final String VOTES_SQL =
+            "SELECT category, votes FROM sender_category_votes WHERE community_sender_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CommunitySenderRepository communitySenderRepository;
+    private final UserSubscriptionRepository subscriptionRepository;
+    private final CommunitySenderCache communitySenderCache;
+    private final DashboardSummaryService dashboardSummaryService;
+
+    public void recordVote(UUID communitySenderId, String category) {
+        jdbcTemplate.update(VOTE_SQL, communitySenderId, category);
+    }
+
+    // After commit, so the check counts the vote that triggered it
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCategoryCorrected(CategoryCorrectedEvent event) {
+        evaluate(event.communitySenderId());
+    }
+
+    void evaluate(UUID communitySenderId) {
+        try {
+            String[] top = new String[1];
+            long[] counts = new long[2]; // total, top
+            jdbcTemplate.query(VOTES_SQL, rs -> {
+                long votes = rs.getLong("votes");
+                counts[0] += votes;
+                if (votes > counts[1]) {
+                    counts[1] = votes;
+                    top[0] = rs.getString("category");
+                }
+            }, communitySenderId);
+
+            long total = counts[0];
+            if (total < MIN_VOTES) return;
+            double agreement = (double) counts[1] / total;
+            if (agreement < MIN_AGREEMENT) return;
+
+            CommunitySender sender = communitySenderRepository.findById(communitySenderId).orElse(null);
+            if (sender == null) return;
+
+            boolean changed = !top[0].equals(sender.getCategory());
+            sender.setCategory(top[0]);
+            sender.setCorrectionCount((int) total);
+            sender.setConfidenceScore(BigDecimal.valueOf(agreement * 100));
+            communitySenderRepository.save(sender);
+            if (!changed) return;
+
+            subscriptionRepository.updateEffectiveCategoryForSender(sender.getId(), top[0]);
+            communitySenderCache.invalidate(sender.getDomain());
+            dashboardSummaryService.markStaleForCommunitySender(sender.getId());
+            log.info("Community DB updated: {} -> {}", sender.getDomain(), top[0]);
+        } catch (Exception e) {
+            log.error("Consensus check failed for community sender {}: {}", communitySenderId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.emailsub.service;
+
+import com.emailsub.model.DashboardSummary;
+import com.emailsub.model.UserSubscription;
+import com.emailsub.repository.DashboardSummaryRepository;
+import com.emailsub.repository.SubscriptionView;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Per-user dashboard read model. The dashboard is served from one precomputed row; unsubscribes
+// and category corrections adjust it in place, scans rebuild it with two grouped queries, and
+// community-wide category changes mark the affected users' rows stale for a rebuild on next read.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardSummaryService {
+
+    private final DashboardSummaryRepository summaryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.dashboard.top-senders-per-category}")
+    private int topSendersPerCategory;
+
+    static final List<String> CATEGORY_ORDER = List.of(
+            "Jobs", "Finance", "Shopping", "Learning", "News",
+            "Social", "Travel", "Health", "Entertainment", "Other"
+    );
+
+    // Only senders linked to a community sender are shown, as with the JOIN FETCH the dashboard
+    // used before
+    private static final String COUNTS_SQL =
+            "SELECT us.effective_category AS category, us.status, COUNT(*) AS cnt " +
+            "FROM user_subscriptions us " +
+            "WHERE us.user_id = ? AND us.community_sender_id IS NOT NULL GROUP BY 1, 2";
+
+    private static final String TOP_SENDERS_SQL =
+            "SELECT * FROM (SELECT us.id, us.sender_email, us.sender_name, us.email_count_30days, " +
+            "us.total_email_count, us.status, us.account_type, us.unsubscribe_type, " +
+            "(us.unsubscribe_link IS NOT NULL OR us.unsubscribe_mailto IS NOT NULL) AS has_unsubscribe_link, " +
+            "us.last_email_at, us.unsubscribed_at, us.effective_category AS category, " +
+            "ROW_NUMBER() OVER (PARTITION BY us.effective_category " +
+            "ORDER BY us.email_count_30days DESC, us.id) AS rn " +
+            "FROM user_subscriptions us " +
+            "WHERE us.user_id = ? AND us.community_sender_id IS NOT NULL) ranked " +
+            "WHERE rn <= ? ORDER BY email_count_30days DESC, id";
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO dashboard_summaries (user_id, summary, stale, updated_at) VALUES (?, ?, false, ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET summary = EXCLUDED.summary, stale = false, " +
+            "updated_at = EXCLUDED.updated_at";
+
+    @Transactional
+    public Map<String, Object> getDashboard(UUID userId) {
+        DashboardSummary summary = summaryRepository.findById(userId).orElse(null);
+        if (summary == null || summary.isStale()) {
+            return rebuild(userId);
+        }
+        return read(summary);
+    }
+
+    // Full recompute, used after changes that can move senders between categories
+    @Transactional
+    public Map<String, Object> rebuild(UUID userId) {
+        Map<String, Object> dashboard = compute(userId);
+        jdbcTemplate.update(UPSERT_SQL, userId, write(dashboard), LocalDateTime.now());
+        return dashboard;
+    }
+
+    // Applies one subscription's status change to the counters and its row in the top list
+    @Transactional
+    public void onStatusChanged(UserSubscription sub, String oldStatus) {
+        if (Objects.equals(oldStatus, sub.getStatus()) || sub.getCommunitySender() == null) return;
+
+        DashboardSummary summary = summaryRepository.findByIdForUpdate(sub.getUser().getId()).orElse(null);
+        if (summary == null || summary.isStale()) return; // rebuilt on next read anyway
+
+        Map<String, Object> dashboard = read(summary);
+        Map<String, Map<String, Object>> counts = castMap(dashboard.get("categoryCounts"));
+        Map<String, Object> categoryCounts = counts.get(sub.getEffectiveCategory());
+        if (categoryCounts == null) {
+            summary.setStale(true);
+            return;
+        }
+
+        adjust(categoryCounts, oldStatus, -1);
+        adjust(categoryCounts, sub.getStatus(), 1);
+        adjustTotal(dashboard, oldStatus, -1);
+        adjustTotal(dashboard, sub.getStatus(), 1);
+
+        Map<String, List<Map<String, Object>>> categories = castMap(dashboard.get("categories"));
+        String id = sub.getId().toString();
+        for (Map<String, Object> row : categories.getOrDefault(sub.getEffectiveCategory(), List.of())) {
+            if (id.equals(row.get("id"))) {
+                row.put("status", sub.getStatus());
+                row.put("unsubscribedAt", sub.getUnsubscribedAt());
+                break;
+            }
+        }
+
+        summary.setSummary(write(dashboard));
+        summaryRepository.save(summary);
+    }
+
+    // Moves one subscription from oldCategory to its current effective category: counters -1/+1,
+    // its row leaves the old top list and is placed into the new one if it ranks there
+    @Transactional
+    public void onCategoryChanged(UserSubscription sub, String oldCategory) {
+        String newCategory = sub.getEffectiveCategory();
+        if (Objects.equals(oldCategory, newCategory) || sub.getCommunitySender() == null) return;
+
+        DashboardSummary summary = summaryRepository.findByIdForUpdate(sub.getUser().getId()).orElse(null);
+        if (summary == null || summary.isStale()) return; // rebuilt on next read anyway
+
+        Map<String, Object> dashboard = read(summary);
+        Map<String, Map<String, Object>> counts = castMap(dashboard.get("categoryCounts"));
+        Map<String, List<Map<String, Object>>> categories = castMap(dashboard.get("categories"));
+        Map<String, String> cursors = castMap(dashboard.get("cursors"));
+        Map<String, Object> oldCounts = counts.get(oldCategory);
+        if (oldCounts == null || cursors == null) {
+            summary.setStale(true);
+            return;
+        }
+
+        adjust(oldCounts, sub.getStatus(), -1);
+        String id = sub.getId().toString();
+        List<Map<String, Object>> oldRows = categories.getOrDefault(oldCategory, new ArrayList<>());
+        oldRows.removeIf(row -> id.equals(String.valueOf(row.get("id"))));
+        if (((Number) oldCounts.get("total")).longValue() <= 0) {
+            counts.remove(oldCategory);
+            categories.remove(oldCategory);
+        }
+        updateCursor(counts, categories, cursors, oldCategory);
+
+        Map<String, Object> newCounts = counts.computeIfAbsent(newCategory, c -> {
+            Map<String, Object> created = new LinkedHashMap<>();
+            created.put("total", 0L);
+            return created;
+        });
+        adjust(newCounts, sub.getStatus(), 1);
+        List<Map<String, Object>> newRows = categories.computeIfAbsent(newCategory, c -> new ArrayList<>());
+        Map<String, Object> row = toRow(sub, newCategory);
+        int position = 0;
+        while (position < newRows.size() && ranksBefore(newRows.get(position), row)) position++;
+        // Past the last shown row it can only be appended when nothing sits behind a cursor there
+        boolean fits = position < newRows.size() || !cursors.containsKey(newCategory);
+        if (fits && position < topSendersPerCategory) {
+            newRows.add(position, row);
+            if (newRows.size() > topSendersPerCategory) newRows.remove(newRows.size() - 1);
+        }
+        updateCursor(counts, categories, cursors, newCategory);
+
+        dashboard.put("categoryCounts", inCategoryOrder(counts));
+        dashboard.put("categories", inCategoryOrder(categories));
+        summary.setSummary(write(dashboard));
+        summaryRepository.save(summary);
+    }
+
+    // A community sender's category changed: every user subscribed to it needs a rebuild
+    @Transactional
+    public void markStaleForCommunitySender(UUID communitySenderId) {
+        int marked = summaryRepository.markStaleForCommunitySender(communitySenderId);
+        log.debug("Marked {} dashboard summaries stale for community sender {}", marked, communitySenderId);
+    }
+
+    private Map<String, Object> compute(UUID userId) {
+        Map<String, Map<String, Object>> counts = new LinkedHashMap<>();
+        Map<String, List<Map<String, Object>>> categories = new LinkedHashMap<>();
+        CATEGORY_ORDER.forEach(c -> {
+            counts.put(c, null);
+            categories.put(c, new ArrayList<>());
+        });
+
+        long[] totals = new long[3]; // senders, active, unsubscribed
+        jdbcTemplate.query(COUNTS_SQL, rs -> {
+            String category = rs.getString("category");
+            long cnt = rs.getLong("cnt");
+            Map<String, Object> categoryCounts = counts.get(category);
+            if (categoryCounts == null) {
+                categoryCounts = new LinkedHashMap<>();
+                categoryCounts.put("total", 0L);
+                counts.put(category, categoryCounts);
+                categories.putIfAbsent(category, new ArrayList<>());
+            }
+            adjust(categoryCounts, rs.getString("status"), cnt);
+
+            totals[0] += cnt;
+            if ("active".equals(rs.getString("status"))) totals[1] += cnt;
+            else if ("unsubscribed".equals(rs.getString("status"))) totals[2] += cnt;
+        }, userId);
+
+        jdbcTemplate.query(TOP_SENDERS_SQL, rs -> {
+            SubscriptionView row = new SubscriptionView(
+                    rs.getObject("id", UUID.class),
+                    rs.getString("sender_email"),
+                    rs.getString("sender_name"),
+                    rs.getInt("email_count_30days"),
+                    rs.getInt("total_email_count"),
+                    rs.getString("status"),
+                    rs.getString("account_type"),
+                    rs.getString("category"),
+                    rs.getString("unsubscribe_type"),
+                    rs.getBoolean("has_unsubscribe_link"),
+                    rs.getObject("last_email_at", LocalDateTime.class),
+                    rs.getObject("unsubscribed_at", LocalDateTime.class));
+            categories.computeIfAbsent(row.category(), c -> new ArrayList<>()).add(row.toMap());
+        }, userId, topSendersPerCategory);
+
+        // Remove empty categories
+        counts.entrySet().removeIf(e -> e.getValue() == null);
+        categories.keySet().retainAll(counts.keySet());
+
+        // Where a category has more senders than the summary keeps, hand out the keyset cursor
+        // that continues after its last row
+        Map<String, String> cursors = new LinkedHashMap<>();
+        categories.forEach((category, rows) -> {
+            long total = ((Number) counts.get(category).get("total")).longValue();
+            if (!rows.isEmpty() && total > rows.size()) {
+                Map<String, Object> last = rows.get(rows.size() - 1);
+                cursors.put(category, SubscriptionService.encodeCursor(
+                        (Integer) last.get("emailCount30days"), (UUID) last.get("id")));
+            }
+        });
+
+        Map<String, Object> dashboard = new LinkedHashMap<>();
+        dashboard.put("categories", categories);
+        dashboard.put("categoryCounts", counts);
+        dashboard.put("cursors", cursors);
+        dashboard.put("totalActive", totals[1]);
+        dashboard.put("totalUnsubscribed", totals[2]);
+        dashboard.put("totalSenders", totals[0]);
+        return dashboard;
+    }
+
+    private Map<String, Object> toRow(UserSubscription sub, String category) {
+        return new SubscriptionView(sub.getId(), sub.getSenderEmail(), sub.getSenderName(),
+                sub.getEmailCount30days(), sub.getTotalEmailCount(), sub.getStatus(), sub.getAccountType(),
+                category, sub.getUnsubscribeType(),
+                sub.getUnsubscribeLink() != null || sub.getUnsubscribeMailto() != null,
+                sub.getLastEmailAt(), sub.getUnsubscribedAt()).toMap();
+    }
+
+    // Same order as TOP_SENDERS_SQL: email_count_30days DESC, id. Postgres orders uuids by their
+    // bytes, which matches comparing the lowercase text form.
+    private boolean ranksBefore(Map<String, Object> a, Map<String, Object> b) {
+        int countA = ((Number) a.get("emailCount30days")).intValue();
+        int countB = ((Number) b.get("emailCount30days")).intValue();
+        if (countA != countB) return countA > countB;
+        return String.valueOf(a.get("id")).compareTo(String.valueOf(b.get("id"))) < 0;
+    }
+
+    // A cursor is handed out when the category has more senders than its top list shows
+    private void updateCursor(Map<String, Map<String, Object>> counts,
+                              Map<String, List<Map<String, Object>>> categories,
+                              Map<String, String> cursors, String category) {
+        Map<String, Object> categoryCounts = counts.get(category);
+        List<Map<String, Object>> rows = categories.getOrDefault(category, List.of());
+        if (categoryCounts == null || rows.isEmpty()
+                || ((Number) categoryCounts.get("total")).longValue() <= rows.size()) {
+            cursors.remove(category);
+            return;
+        }
+        Map<String, Object> last = rows.get(rows.size() - 1);
+        cursors.put(category, SubscriptionService.encodeCursor(
+                ((Number) last.get("emailCount30days")).intValue(), UUID.fromString(String.valueOf(last.get("id")))));
+    }
+
+    private <V> Map<String, V> inCategoryOrder(Map<String, V> byCategory) {
+        Map<String, V> ordered = new LinkedHashMap<>();
+        CATEGORY_ORDER.forEach(c -> {
+            if (byCategory.containsKey(c)) ordered.put(c, byCategory.get(c));
+        });
+        ordered.putAll(byCategory);
+        return ordered;
+    }
+
+    private void adjust(Map<String, Object> categoryCounts, String status, long delta) {
+        categoryCounts.merge("total", delta, (a, b) -> ((Number) a).longValue() + ((Number) b).longValue());
+        if (status != null) {
+            categoryCounts.merge(status, delta, (a, b) -> ((Number) a).longValue() + ((Number) b).longValue());
+        }
+    }
+
+    private void adjustTotal(Map<String, Object> dashboard, String status, long delta) {
+        String key = "active".equals(status) ? "totalActive"
+                : "unsubscribed".equals(status) ? "totalUnsubscribed" : null;
+        if (key != null) dashboard.put(key, ((Number) dashboard.get(key)).longValue() + delta);
+    }
+
+    private Map<String, Object> read(DashboardSummary summary) {
+        try {
+            return objectMapper.readValue(summary.getSummary(), new TypeReference<LinkedHashMap<String, Object>>() {});
+        } catch (Exception e) {
+            throw new RuntimeException("Corrupt dashboard summary for user " + summary.getUserId(), e);
+        }
+    }
+
+    private String write(Map<String, Object> dashboard) {
+        try {
+            return objectMapper.writeValueAsString(dashboard);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not serialize dashboard summary", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> castMap(Object value) {
+        return (Map<String, V>) value;
+    }
+}
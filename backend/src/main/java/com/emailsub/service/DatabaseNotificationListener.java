@@ -0,0 +1,121 @@
+package com.emailsub.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+// Reacts to Postgres NOTIFY from the triggers on categorization_queue (wakes the categorization
+// workers, so the scheduled poll only has to be a slow safety net) and community_senders (evicts
+// the changed domain from this node's CommunitySenderCache). Holds its own connection outside the
+// pool, since LISTEN needs one connection for good. On any error it reconnects with a backoff,
+// then drains the queue and clears the cache once, in case a notification was missed meanwhile.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DatabaseNotificationListener {
+
+    static final String QUEUE_CHANNEL = "categorization_queue";
+    static final String SENDERS_CHANNEL = "community_senders";
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+    private final AiCategorizationService categorizationService;
+    private final CommunitySenderCache communitySenderCache;
+
+    @Value("${app.db-notifications.enabled}")
+    private boolean enabled;
+
+    @Value("${app.db-notifications.poll-timeout-ms}")
+    private int pollTimeoutMs;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Database notifications disabled, relying on the scheduled poll and cache TTLs");
+            return;
+        }
+        running = true;
+        thread = new Thread(this::listen, "db-notification-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+    }
+
+    private void listen() {
+        long reconnectDelay = 1000;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + QUEUE_CHANNEL);
+                    statement.execute("LISTEN " + SENDERS_CHANNEL);
+                }
+                log.info("Listening for categorization queue and community sender notifications");
+                reconnectDelay = 1000;
+                communitySenderCache.invalidateAll();
+                wake();
+
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    // Blocks until a notification arrives or the timeout passes
+                    PGNotification[] notifications = pg.getNotifications(pollTimeoutMs);
+                    if (notifications != null) dispatch(notifications);
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("Database notification listener failed, reconnecting in {} ms: {}",
+                        reconnectDelay, e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    void dispatch(PGNotification[] notifications) {
+        boolean queued = false;
+        for (PGNotification notification : notifications) {
+            if (SENDERS_CHANNEL.equals(notification.getName())) {
+                communitySenderCache.invalidate(notification.getParameter());
+            } else if (QUEUE_CHANNEL.equals(notification.getName())) {
+                queued = true;
+            }
+        }
+        if (queued) wake();
+    }
+
+    private void wake() {
+        try {
+            categorizationService.processQueue();
+        } catch (Exception e) {
+            log.error("Error waking categorization workers: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.emailsub.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Maps a sender host to the key community senders are stored under: its registrable domain
+// (eTLD+1) per the public suffix list, so email.amazon.com, marketing.amazon.com and amazon.com
+// share one community sender and one categorization. Hosts at or below a configured override keep
+// the override instead, for subdomains that belong in a different category than their parent.
+// public_suffix_list.dat is the unmodified upstream list; update it by replacing the file.
+@Component
+@Slf4j
+public class DomainNormalizer {
+
+    private static final String SUFFIX_LIST = "public_suffix_list.dat";
+
+    @Value("${app.domains.subdomain-overrides}")
+    private Set<String> subdomainOverrides;
+
+    private final Node root = new Node();
+    private final Set<String> overrides = new HashSet<>();
+
+    // One node per label, keyed right to left: com -> amazon, uk -> co
+    private static class Node {
+        Map<String, Node> children;
+        boolean rule;      // the labels up to here are a public suffix
+        boolean exception; // !rule: the labels up to here are registrable despite a wildcard
+
+        Node child(String label) {
+            return children == null ? null : children.get(label);
+        }
+
+        Node addChild(String label) {
+            if (children == null) children = new HashMap<>(4);
+            return children.computeIfAbsent(label, l -> new Node());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        int rules = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(SUFFIX_LIST).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Only the first whitespace-separated field counts; the rest is comment
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("//")) continue;
+                int space = line.indexOf(' ');
+                if (space > 0) line = line.substring(0, space);
+                addRule(line.toLowerCase());
+                rules++;
+                // The list spells IDN suffixes in Unicode, mail hosts use the xn-- form
+                String ascii = toAscii(line);
+                if (ascii != null && !ascii.equalsIgnoreCase(line)) addRule(ascii.toLowerCase());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not load " + SUFFIX_LIST, e);
+        }
+
+        for (String override : subdomainOverrides) {
+            if (!override.isBlank()) overrides.add(override.strip().toLowerCase());
+        }
+        log.info("Loaded {} public suffix rules and {} subdomain overrides", rules, overrides.size());
+    }
+
+    // Lowercased registrable domain of a host; a host that is itself a public suffix, or an IP
+    // address literal, is returned unchanged
+    public String registrableDomain(String host) {
+        if (host == null) return null;
+        host = host.toLowerCase();
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        if (host.isEmpty()) return null;
+        if (isIpLiteral(host)) return host;
+
+        String[] labels = host.split("\\.");
+        int suffixLength = publicSuffixLength(labels);
+        if (labels.length <= suffixLength) return host;
+
+        String registrable = join(labels, labels.length - suffixLength - 1);
+        if (overrides.isEmpty()) return registrable;
+
+        // The longest override the host is at or below wins
+        for (int from = 0; from < labels.length - suffixLength - 1; from++) {
+            String candidate = join(labels, from);
+            if (overrides.contains(candidate)) return candidate;
+        }
+        return registrable;
+    }
+
+    // The label just left of the public suffix, i.e. the brand: e.mail.linkedin.fr -> linkedin,
+    // amazon.co.jp -> amazon. Overrides are not applied. Null for a bare public suffix.
+    public String registrableLabel(String host) {
+        if (host == null) return null;
+        host = host.toLowerCase();
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        if (host.isEmpty() || isIpLiteral(host)) return null;
+
+        String[] labels = host.split("\\.");
+        int suffixLength = publicSuffixLength(labels);
+        if (labels.length <= suffixLength) return null;
+        return labels[labels.length - suffixLength - 1];
+    }
+
+    // [1.2.3.4] and [IPv6:...] address literals, bare IPv6, and dotted IPv4 (no TLD is all digits)
+    static boolean isIpLiteral(String host) {
+        if (host.startsWith("[") || host.indexOf(':') >= 0) return true;
+        int lastDot = host.lastIndexOf('.');
+        if (lastDot == host.length() - 1) return false;
+        for (int i = lastDot + 1; i < host.length(); i++) {
+            if (!Character.isDigit(host.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static String toAscii(String rule) {
+        boolean exception = rule.startsWith("!");
+        try {
+            String ascii = IDN.toASCII(exception ? rule.substring(1) : rule);
+            return exception ? "!" + ascii : ascii;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void addRule(String rule) {
+        boolean exception = rule.startsWith("!");
+        if (exception) rule = rule.substring(1);
+
+        String[] labels = rule.split("\\.");
+        Node node = root;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.addChild(labels[i]);
+        }
+        if (exception) node.exception = true;
+        else node.rule = true;
+    }
+
+    // Number of trailing labels that form the public suffix. Follows the list's algorithm: an
+    // exception rule wins, otherwise the longest matching rule, otherwise the implicit "*" rule.
+    private int publicSuffixLength(String[] labels) {
+        int longest = 1;
+        Node node = root;
+        for (int depth = 1; depth <= labels.length; depth++) {
+            Node wildcard = node.child("*");
+            if (wildcard != null && wildcard.rule) longest = Math.max(longest, depth);
+
+            node = node.child(labels[labels.length - depth]);
+            if (node == null) break;
+            if (node.exception) return depth - 1;
+            if (node.rule) longest = Math.max(longest, depth);
+        }
+        return longest;
+    }
+
+    private static String join(String[] labels, int from) {
+        StringJoiner joined = new StringJoiner(".");
+        for (int i = from; i < labels.length; i++) joined.add(labels[i]);
+        return joined.toString();
+    }
+}
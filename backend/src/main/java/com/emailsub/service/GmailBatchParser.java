@@ -0,0 +1,261 @@
+package com.emailsub.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Splits a Gmail /batch response (multipart/mixed, one application/http part per sub-request)
+// into the Content-ID, status and message of each embedded HTTP response as the bytes arrive.
+// Header lines are read one at a time; the JSON body of a 2xx part goes straight into its own
+// non-blocking parser, holding back only the bytes that might start the next boundary.
+final class GmailBatchParser {
+
+    // One sub-response of a Gmail batch request
+    static class Part {
+        String contentId;
+        int status;
+        ScannedMessage message; // parsed body of a 2xx sub-response, null when it could not be read
+    }
+
+    private enum State { PREAMBLE, OUTER_HEADERS, INNER_HEADERS, BODY, BOUNDARY, EPILOGUE }
+
+    private final String delimiter;    // "--" + boundary
+    private final byte[] delimiterBytes;
+    private final Supplier<MessageStreamParser.Feed<ScannedMessage>> bodyParser;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private final List<Part> completed = new ArrayList<>();
+
+    private State state = State.PREAMBLE;
+    private Part part;
+    private boolean statusSeen;
+    private MessageStreamParser.Feed<ScannedMessage> body;
+    // BODY only: bytes of the current line that match the delimiter so far, -1 once it can't be one
+    private int matched;
+
+    GmailBatchParser(MediaType contentType, Supplier<MessageStreamParser.Feed<ScannedMessage>> bodyParser) {
+        String boundary = contentType != null ? contentType.getParameter("boundary") : null;
+        if (boundary == null) {
+            throw new IllegalStateException("Gmail batch response is not multipart");
+        }
+        if (boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        this.delimiter = "--" + boundary;
+        this.delimiterBytes = delimiter.getBytes(StandardCharsets.ISO_8859_1);
+        this.bodyParser = bodyParser;
+    }
+
+    static Flux<Part> parse(MediaType contentType, Flux<DataBuffer> body,
+                            Supplier<MessageStreamParser.Feed<ScannedMessage>> bodyParser) {
+        return Flux.defer(() -> {
+            GmailBatchParser parser = new GmailBatchParser(contentType, bodyParser);
+            return body.concatMapIterable(parser::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(parser.finish())))
+                    .doFinally(signal -> parser.close());
+        });
+    }
+
+    // Consumes and releases the buffer; returns the parts it completed
+    List<Part> feed(DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+            while (chunks.hasNext()) {
+                read(chunks.next());
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return takeCompleted();
+    }
+
+    List<Part> finish() {
+        if (line.size() > 0) onLine(takeLine());
+        if (state == State.BODY && matched > 0) feedBody(ByteBuffer.wrap(delimiterBytes, 0, matched));
+        endPart();
+        state = State.EPILOGUE;
+        return takeCompleted();
+    }
+
+    void close() {
+        if (body != null) body.close();
+        body = null;
+    }
+
+    private void read(ByteBuffer chunk) {
+        while (chunk.hasRemaining()) {
+            switch (state) {
+                case BODY -> readBody(chunk);
+                case EPILOGUE -> chunk.position(chunk.limit());
+                default -> readLine(chunk);
+            }
+        }
+    }
+
+    private void readLine(ByteBuffer chunk) {
+        int newline = indexOfNewline(chunk);
+        int end = newline < 0 ? chunk.limit() : newline;
+        if (chunk.hasArray()) {
+            line.write(chunk.array(), chunk.arrayOffset() + chunk.position(), end - chunk.position());
+        } else {
+            byte[] bytes = new byte[end - chunk.position()];
+            chunk.get(bytes);
+            line.writeBytes(bytes);
+        }
+        chunk.position(newline < 0 ? end : newline + 1);
+        if (newline >= 0) onLine(takeLine());
+    }
+
+    // Passes body bytes through until a line starts with the delimiter. Only line starts are
+    // compared against it; the rest of each line is skipped over by looking for the next newline.
+    private void readBody(ByteBuffer chunk) {
+        int runStart = matched > 0 ? -1 : chunk.position();
+        while (chunk.hasRemaining()) {
+            if (matched < 0) {
+                int newline = indexOfNewline(chunk);
+                chunk.position(newline < 0 ? chunk.limit() : newline + 1);
+                if (newline >= 0) matched = 0;
+                continue;
+            }
+
+            int at = chunk.position();
+            byte b = chunk.get();
+            if (b == delimiterBytes[matched]) {
+                if (matched == 0 && runStart >= 0) feedBody(slice(chunk, runStart, at));
+                runStart = -1;
+                if (++matched == delimiterBytes.length) {
+                    endPart();
+                    line.write(delimiterBytes, 0, delimiterBytes.length);
+                    state = State.BOUNDARY;
+                    return;
+                }
+                continue;
+            }
+            // Not a boundary after all: the held-back bytes belong to the body
+            if (matched > 0) feedBody(ByteBuffer.wrap(delimiterBytes, 0, matched));
+            if (runStart < 0) runStart = at;
+            matched = b == '\n' ? 0 : -1;
+        }
+        if (runStart >= 0) feedBody(slice(chunk, runStart, chunk.position()));
+    }
+
+    private void onLine(String text) {
+        String trimmed = text.strip();
+        if (state == State.EPILOGUE) return;
+        if (state == State.BOUNDARY || isDelimiter(trimmed)) {
+            endPart();
+            if (trimmed.endsWith("--") && trimmed.length() >= delimiter.length() + 2) {
+                state = State.EPILOGUE;
+            } else {
+                part = new Part();
+                statusSeen = false;
+                state = State.OUTER_HEADERS;
+            }
+            return;
+        }
+
+        switch (state) {
+            case OUTER_HEADERS -> {
+                if (trimmed.isEmpty()) state = State.INNER_HEADERS;
+                else if (part.contentId == null) part.contentId = parseContentId(text);
+            }
+            case INNER_HEADERS -> {
+                if (!statusSeen) {
+                    if (trimmed.isEmpty()) return;
+                    // Status line of the embedded HTTP response: "HTTP/1.1 200 OK"
+                    int codeStart = trimmed.indexOf(' ') + 1;
+                    int codeEnd = trimmed.indexOf(' ', codeStart);
+                    part.status = codeStart > 0
+                            ? parseStatus(trimmed.substring(codeStart, codeEnd < 0 ? trimmed.length() : codeEnd))
+                            : 0;
+                    statusSeen = true;
+                } else if (trimmed.isEmpty()) {
+                    if (part.status >= 200 && part.status < 300) body = bodyParser.get();
+                    matched = 0;
+                    state = State.BODY;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private boolean isDelimiter(String trimmed) {
+        if (!trimmed.startsWith(delimiter)) return false;
+        String rest = trimmed.substring(delimiter.length());
+        return rest.isEmpty() || rest.equals("--");
+    }
+
+    // Parts whose outer headers never ended are not sub-responses and are dropped
+    private void endPart() {
+        if (part != null && (state == State.INNER_HEADERS || state == State.BODY)) {
+            if (body != null) {
+                try {
+                    part.message = body.finish();
+                } catch (IOException e) {
+                    part.message = null;
+                }
+            }
+            completed.add(part);
+        }
+        close();
+        part = null;
+    }
+
+    private void feedBody(ByteBuffer bytes) {
+        if (body == null || !bytes.hasRemaining()) return;
+        try {
+            body.feed(bytes);
+        } catch (IOException e) {
+            // Unreadable JSON: the part is kept without a message
+            close();
+        }
+    }
+
+    private String takeLine() {
+        String text = line.toString(StandardCharsets.ISO_8859_1);
+        line.reset();
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private List<Part> takeCompleted() {
+        if (completed.isEmpty()) return List.of();
+        List<Part> parts = new ArrayList<>(completed);
+        completed.clear();
+        return parts;
+    }
+
+    private static int indexOfNewline(ByteBuffer chunk) {
+        for (int i = chunk.position(); i < chunk.limit(); i++) {
+            if (chunk.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer slice(ByteBuffer chunk, int from, int to) {
+        return chunk.duplicate().limit(to).position(from);
+    }
+
+    private static String parseContentId(String header) {
+        if (!header.regionMatches(true, 0, "Content-ID:", 0, "Content-ID:".length())) return null;
+        String value = header.substring(header.indexOf(':') + 1).trim();
+        if (value.startsWith("<") && value.endsWith(">")) value = value.substring(1, value.length() - 1);
+        // Gmail echoes the request id back as "response-<id>"
+        return value.startsWith("response-") ? value.substring("response-".length()) : value;
+    }
+
+    private static int parseStatus(String status) {
+        try {
+            return Integer.parseInt(status);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
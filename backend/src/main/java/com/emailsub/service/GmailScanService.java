@@ -1,18 +1,32 @@
 package com.emailsub.service;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.*;
 import com.emailsub.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -20,18 +34,47 @@ import java.util.regex.Pattern;
 public class GmailScanService {
 
     private final UserRepository userRepository;
-    private final UserSubscriptionRepository subscriptionRepository;
-    private final CommunitySenderRepository communitySenderRepository;
     private final SyncLogRepository syncLogRepository;
-    private final AiCategorizationService categorizationService;
     private final TokenRefreshService tokenRefreshService;
     private final ObjectMapper objectMapper;
+    private final MessageStreamParser messageParser;
+    private final ScanCheckpointService checkpointService;
+    private final MailHeaderParser headerParser;
+    private final SubscriptionUpsertService upsertService;
+    private final HttpClientFactory httpClients;
 
     private static final String GMAIL_API = "https://gmail.googleapis.com/gmail/v1";
-    private static final Pattern UNSUBSCRIBE_URL_PATTERN =
-            Pattern.compile("<(https?://[^>]+)>", Pattern.CASE_INSENSITIVE);
-    private static final Pattern UNSUBSCRIBE_MAILTO_PATTERN =
-            Pattern.compile("<mailto:([^>]+)>", Pattern.CASE_INSENSITIVE);
+    private static final String GMAIL_BATCH_API = "https://www.googleapis.com/batch/gmail/v1";
+    private static final String METADATA_QUERY = "?format=metadata&metadataHeaders=From&metadataHeaders=Subject" +
+            "&metadataHeaders=Date&metadataHeaders=List-Unsubscribe&metadataHeaders=List-Unsubscribe-Post";
+    private static final int MAX_BATCH_SIZE = 100; // Gmail rejects batches larger than 100 calls
+    private static final int PAGE_PREFETCH = 2;
+
+    @Value("${app.gmail.batch-size}")
+    private int batchSize;
+
+    @Value("${app.gmail.per-user-concurrency}")
+    private int perUserConcurrency;
+
+    @Value("${app.gmail.global-concurrency}")
+    private int globalConcurrency;
+
+    @Value("${app.gmail.throttle-retry.max-attempts}")
+    private int throttleMaxAttempts;
+
+    @Value("${app.gmail.throttle-retry.base-delay-ms}")
+    private long throttleBaseDelayMs;
+
+    @Value("${app.gmail.throttle-retry.max-delay-ms}")
+    private long throttleMaxDelayMs;
+
+    // Shared by every scan on this node so concurrent users can't exceed the global limit together
+    private ConcurrencyLimiter globalLimiter;
+
+    @PostConstruct
+    void init() {
+        globalLimiter = new ConcurrencyLimiter(globalConcurrency);
+    }
 
     public Map<String, Object> scanInbox(UUID userId) {
         User user = userRepository.findById(userId)
@@ -41,10 +84,20 @@ public class GmailScanService {
             return Map.of("error", "Gmail not connected");
         }
 
+        // Picks up an interrupted scan where its last checkpoint left off
+        ScanCheckpoint checkpoint = checkpointService.resumeOrStart(
+                user, "gmail", user.getGmailHistoryId() == null ? "full" : "delta");
+        if (checkpoint == null) {
+            return Map.of("error", "Gmail scan already running");
+        }
+        if (checkpoint.getStartHistoryId() == null && "delta".equals(checkpoint.getSyncType())) {
+            checkpoint.setStartHistoryId(user.getGmailHistoryId());
+        }
+
         SyncLog syncLog = SyncLog.builder()
                 .user(user)
                 .accountType("gmail")
-                .syncType(user.getGmailSyncToken() == null ? "full" : "delta")
+                .syncType(checkpoint.getSyncType())
                 .status("running")
                 .build();
         syncLogRepository.save(syncLog);
@@ -57,50 +110,60 @@ public class GmailScanService {
             // Refresh token if needed
             String accessToken = tokenRefreshService.getValidGmailToken(user);
 
-            WebClient client = WebClient.builder()
-                    .baseUrl(GMAIL_API)
+            WebClient client = httpClients.client(GMAIL_API).mutate()
                     .defaultHeader("Authorization", "Bearer " + accessToken)
                     .build();
 
-            // Fetch message list with sync token if available
-            String nextPageToken = null;
-            String newSyncToken = null;
-            Map<String, SubscriptionData> senderMap = new HashMap<>();
-
-            do {
-                String url = buildListUrl(user.getGmailSyncToken(), nextPageToken);
-                String response = client.get().uri(url).retrieve().bodyToMono(String.class).block();
-                JsonNode root = objectMapper.readTree(response);
-
-                newSyncToken = root.path("nextSyncToken").asText(null);
-                nextPageToken = root.path("nextPageToken").asText(null);
-
-                JsonNode messages = root.path("messages");
-                if (messages.isArray()) {
-                    for (JsonNode msg : messages) {
-                        String msgId = msg.path("id").asText();
-                        processMessage(client, msgId, senderMap);
-                        emailsScanned++;
-                    }
-                }
-
-                if ("".equals(nextPageToken)) nextPageToken = null;
+            Map<String, SubscriptionData> senderMap = checkpointService.restoreSenders(checkpoint);
+
+            // Delta sync reads only messages added since the stored historyId. Gmail keeps history
+            // for about a week; an expired id answers 404 and we fall back to a full scan.
+            Flux<ListPage> pages;
+            if ("delta".equals(checkpoint.getSyncType())) {
+                String startHistoryId = checkpoint.getStartHistoryId();
+                pages = pagesFrom(checkpoint.getPageToken(), token -> fetchHistoryPage(client, startHistoryId, token))
+                        .onErrorResume(WebClientResponseException.NotFound.class, e -> {
+                            log.info("Gmail historyId {} expired for user {}, running full scan", startHistoryId, userId);
+                            syncLog.setSyncType("full");
+                            checkpoint.setSyncType("full");
+                            checkpoint.setStartHistoryId(null);
+                            checkpoint.setHistoryId(null);
+                            checkpoint.setPageToken(null);
+                            checkpoint.setEmailsScanned(0);
+                            checkpoint.setPagesProcessed(0);
+                            senderMap.clear();
+                            return fullScanPages(client, checkpoint);
+                        });
+            } else {
+                pages = fullScanPages(client, checkpoint);
+            }
 
-            } while (nextPageToken != null);
+            // Listing pages feed bounded-concurrency metadata fetches; concatMap keeps the next
+            // page listing in flight while the current page's messages are still being fetched.
+            // senderMap and the checkpoint are only touched inside the page's own stage, and a due
+            // checkpoint is written before the next page's messages are aggregated, so the saved
+            // senders always match the saved page token.
+            pages.concatMap(page -> Flux.fromIterable(page.messageIds)
+                                    .buffer(Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE)))
+                                    .flatMap(batch -> fetchMessages(client, batch), perUserConcurrency)
+                                    .doOnNext(msg -> aggregateMessage(msg, senderMap))
+                                    .then(Mono.defer(() -> advanceCheckpoint(page, checkpoint, senderMap, syncLog))),
+                            PAGE_PREFETCH)
+                    .then()
+                    .block();
+            emailsScanned = checkpoint.getEmailsScanned();
 
             // Save subscriptions to DB
-            for (Map.Entry<String, SubscriptionData> entry : senderMap.entrySet()) {
-                if (saveOrUpdateSubscription(user, entry.getValue(), "gmail")) {
-                    newSenders++;
-                }
-            }
+            newSenders = upsertService.upsertAll(user, senderMap.values(), "gmail",
+                    "delta".equals(checkpoint.getSyncType()));
 
-            // Save new sync token
-            if (newSyncToken != null && !newSyncToken.isEmpty()) {
-                user.setGmailSyncToken(newSyncToken);
+            // Save the history checkpoint for the next delta sync
+            if (checkpoint.getHistoryId() != null && !checkpoint.getHistoryId().isEmpty()) {
+                user.setGmailHistoryId(checkpoint.getHistoryId());
                 user.setGmailLastSync(LocalDateTime.now());
                 userRepository.save(user);
             }
+            checkpointService.clear(checkpoint);
 
             syncLog.setStatus("success");
             syncLog.setEmailsScanned(emailsScanned);
@@ -118,6 +181,7 @@ public class GmailScanService {
 
         } catch (Exception e) {
             log.error("Gmail scan failed for user {}: {}", userId, e.getMessage());
+            checkpointService.release(checkpoint);
             syncLog.setStatus("failed");
             syncLog.setErrorMessage(e.getMessage());
             syncLog.setCompletedAt(LocalDateTime.now());
@@ -127,149 +191,259 @@ public class GmailScanService {
         }
     }
 
-    private String buildListUrl(String syncToken, String pageToken) {
-        StringBuilder url = new StringBuilder("/users/me/messages?maxResults=100");
+    // Moves the checkpoint past a fully aggregated page and writes it when due
+    private Mono<Void> advanceCheckpoint(ListPage page, ScanCheckpoint checkpoint,
+                                         Map<String, SubscriptionData> senderMap, SyncLog syncLog) {
+        checkpoint.setPageToken(page.nextPageToken);
+        if (page.historyId != null) checkpoint.setHistoryId(page.historyId);
+        checkpoint.setEmailsScanned(checkpoint.getEmailsScanned() + page.messageIds.size());
+        checkpoint.setPagesProcessed(checkpoint.getPagesProcessed() + 1);
+        if (!checkpointService.isDue(checkpoint)) return Mono.empty();
+
+        return Mono.<Void>fromRunnable(() -> checkpointService.save(checkpoint, senderMap, syncLog))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Flux<ListPage> pagesFrom(String firstPageToken, Function<String, Mono<ListPage>> fetchPage) {
+        return fetchPage.apply(firstPageToken)
+                .expand(page -> page.nextPageToken != null ? fetchPage.apply(page.nextPageToken) : Mono.empty());
+    }
+
+    // The profile historyId is read before listing so mail arriving mid-scan is caught by the next
+    // delta. A resumed full scan already carries it in its checkpoint.
+    private Flux<ListPage> fullScanPages(WebClient client, ScanCheckpoint checkpoint) {
+        if (checkpoint.getHistoryId() != null) {
+            return pagesFrom(checkpoint.getPageToken(), token -> fetchListPage(client, token));
+        }
+        return client.get()
+                .uri("/users/me/profile")
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(this::readTree)
+                .flatMapMany(profile -> {
+                    checkpoint.setHistoryId(profile.path("historyId").asText(null));
+                    return pagesFrom(checkpoint.getPageToken(), token -> fetchListPage(client, token));
+                });
+    }
+
+    private String buildListUrl(String pageToken) {
+        StringBuilder url = new StringBuilder("/users/me/messages?maxResults=500");
         // Only scan Inbox, Promotions, Updates - skip Spam, Trash, Sent
         url.append("&labelIds=INBOX&labelIds=CATEGORY_PROMOTIONS&labelIds=CATEGORY_UPDATES");
-        if (syncToken != null && !syncToken.isEmpty()) {
-            url.append("&syncToken=").append(syncToken);
-        }
         if (pageToken != null && !pageToken.isEmpty()) {
             url.append("&pageToken=").append(pageToken);
         }
         return url.toString();
     }
 
-    private void processMessage(WebClient client, String msgId, Map<String, SubscriptionData> senderMap) {
-        try {
-            String response = client.get()
-                    .uri("/users/me/messages/" + msgId + "?format=metadata&metadataHeaders=From&metadataHeaders=Subject&metadataHeaders=Date&metadataHeaders=List-Unsubscribe&metadataHeaders=List-Unsubscribe-Post")
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
+    private Mono<ListPage> fetchListPage(WebClient client, String pageToken) {
+        return client.get()
+                .uri(buildListUrl(pageToken))
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(this::readTree)
+                .map(root -> {
+                    ListPage page = new ListPage();
+                    page.nextPageToken = root.path("nextPageToken").asText(null);
+                    if ("".equals(page.nextPageToken)) page.nextPageToken = null;
+
+                    JsonNode messages = root.path("messages");
+                    if (messages.isArray()) {
+                        for (JsonNode msg : messages) {
+                            page.messageIds.add(msg.path("id").asText());
+                        }
+                    }
+                    return page;
+                });
+    }
 
-            JsonNode msg = objectMapper.readTree(response);
-            JsonNode headers = msg.path("payload").path("headers");
+    private Mono<ListPage> fetchHistoryPage(WebClient client, String startHistoryId, String pageToken) {
+        StringBuilder url = new StringBuilder("/users/me/history?maxResults=500&historyTypes=messageAdded")
+                .append("&startHistoryId=").append(startHistoryId);
+        if (pageToken != null && !pageToken.isEmpty()) {
+            url.append("&pageToken=").append(pageToken);
+        }
 
-            String from = null, subject = null, date = null, unsubscribeHeader = null, unsubscribePost = null;
+        return client.get()
+                .uri(url.toString())
+                .retrieve()
+                .bodyToMono(String.class)
+                .flatMap(this::readTree)
+                .map(root -> {
+                    ListPage page = new ListPage();
+                    page.historyId = root.path("historyId").asText(null);
+                    page.nextPageToken = root.path("nextPageToken").asText(null);
+                    if ("".equals(page.nextPageToken)) page.nextPageToken = null;
+
+                    Set<String> seen = new LinkedHashSet<>();
+                    for (JsonNode record : root.path("history")) {
+                        for (JsonNode added : record.path("messagesAdded")) {
+                            JsonNode msg = added.path("message");
+                            if (isScannedLabel(msg.path("labelIds"))) seen.add(msg.path("id").asText());
+                        }
+                    }
+                    page.messageIds.addAll(seen);
+                    return page;
+                });
+    }
 
-            for (JsonNode header : headers) {
-                String name = header.path("name").asText();
-                String value = header.path("value").asText();
-                switch (name.toLowerCase()) {
-                    case "from" -> from = value;
-                    case "subject" -> subject = value;
-                    case "date" -> date = value;
-                    case "list-unsubscribe" -> unsubscribeHeader = value;
-                    case "list-unsubscribe-post" -> unsubscribePost = value;
+    // Same label filter the full scan applies through messages.list
+    private boolean isScannedLabel(JsonNode labelIds) {
+        boolean scanned = false;
+        for (JsonNode label : labelIds) {
+            switch (label.asText()) {
+                case "SPAM", "TRASH", "SENT", "DRAFT" -> {
+                    return false;
                 }
+                case "INBOX", "CATEGORY_PROMOTIONS", "CATEGORY_UPDATES" -> scanned = true;
             }
+        }
+        return scanned;
+    }
 
-            // Only process emails with unsubscribe header
-            if (unsubscribeHeader == null || unsubscribeHeader.isEmpty()) return;
-
-            String senderEmail = extractEmail(from);
-            String senderName = extractName(from);
-            if (senderEmail == null) return;
-
-            String domain = extractDomain(senderEmail);
-            String unsubscribeUrl = extractUrl(unsubscribeHeader);
-            String unsubscribeMailto = extractMailto(unsubscribeHeader);
-            String unsubType = determineUnsubscribeType(unsubscribePost, unsubscribeUrl);
-
-            SubscriptionData data = senderMap.computeIfAbsent(senderEmail, k -> new SubscriptionData());
-            data.senderEmail = senderEmail;
-            data.senderName = senderName;
-            data.domain = domain;
-            data.unsubscribeUrl = unsubscribeUrl;
-            data.unsubscribeMailto = unsubscribeMailto;
-            data.unsubscribeType = unsubType;
-            data.emailCount++;
-            if (subject != null) data.subjects.add(subject);
+    // Messages Gmail throttles (429/5xx sub-responses, or the whole batch failing with one) go out
+    // again together in a later batch after a jittered exponential backoff, rather than as single
+    // GETs against a quota that is already spent. The backoff waits without a global permit but
+    // keeps its per-user slot, so a throttled scan slows down instead of fanning out.
+    Flux<ScannedMessage> fetchMessages(WebClient client, List<String> msgIds) {
+        return fetchMessages(client, msgIds, 1);
+    }
 
-        } catch (Exception e) {
-            log.debug("Error processing message {}: {}", msgId, e.getMessage());
-        }
+    private Flux<ScannedMessage> fetchMessages(WebClient client, List<String> msgIds, int attempt) {
+        return Flux.defer(() -> {
+            List<String> throttled = new ArrayList<>();
+            return globalLimiter.run(() -> msgIds.size() == 1
+                            ? fetchMessage(client, msgIds.get(0), throttled).flux()
+                            : fetchBatch(client, msgIds, throttled))
+                    .concatWith(Flux.defer(() -> retryThrottled(client, throttled, attempt)));
+        });
     }
 
-    private boolean saveOrUpdateSubscription(User user, SubscriptionData data, String accountType) {
-        boolean isNew = false;
-        Optional<UserSubscription> existing = subscriptionRepository
-                .findByUserIdAndSenderEmailAndAccountType(user.getId(), data.senderEmail, accountType);
-
-        UserSubscription sub;
-        if (existing.isPresent()) {
-            sub = existing.get();
-            sub.setTotalEmailCount(sub.getTotalEmailCount() + data.emailCount);
-            sub.setEmailCount30days(data.emailCount);
-        } else {
-            sub = new UserSubscription();
-            sub.setUser(user);
-            sub.setSenderEmail(data.senderEmail);
-            sub.setSenderName(data.senderName);
-            sub.setAccountType(accountType);
-            sub.setTotalEmailCount(data.emailCount);
-            sub.setEmailCount30days(data.emailCount);
-            sub.setFirstEmailAt(LocalDateTime.now());
-            isNew = true;
+    private Flux<ScannedMessage> retryThrottled(WebClient client, List<String> msgIds, int attempt) {
+        if (msgIds.isEmpty()) return Flux.empty();
+        if (attempt >= throttleMaxAttempts) {
+            log.warn("Gmail still throttling after {} attempts, skipping {} messages", attempt, msgIds.size());
+            return Flux.empty();
         }
+        long delayMs = throttleBackoffMillis(attempt);
+        log.debug("Gmail throttled {} messages, retrying them in {} ms", msgIds.size(), delayMs);
+        return Mono.delay(Duration.ofMillis(delayMs))
+                .thenMany(fetchMessages(client, msgIds, attempt + 1));
+    }
 
-        sub.setUnsubscribeLink(data.unsubscribeUrl);
-        sub.setUnsubscribeMailto(data.unsubscribeMailto);
-        sub.setUnsubscribeType(data.unsubscribeType);
-        sub.setLastEmailAt(LocalDateTime.now());
-
-        // Link to community sender if exists
-        communitySenderRepository.findByDomain(data.domain)
-                .ifPresentOrElse(
-                        sub::setCommunitySender,
-                        () -> categorizationService.addToQueue(
-                                data.domain, data.senderName, data.senderEmail,
-                                new ArrayList<>(data.subjects)
-                        )
-                );
-
-        subscriptionRepository.save(sub);
-        return isNew;
+    // Exponential, capped, with equal jitter so throttled scans don't come back in lockstep
+    private long throttleBackoffMillis(int attempt) {
+        long ceiling = Math.min(throttleMaxDelayMs, throttleBaseDelayMs << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
     }
 
-    private String extractEmail(String from) {
-        if (from == null) return null;
-        Pattern p = Pattern.compile("<([^>]+@[^>]+)>");
-        Matcher m = p.matcher(from);
-        if (m.find()) return m.group(1).toLowerCase();
-        if (from.contains("@")) return from.trim().toLowerCase();
-        return null;
+    private static boolean isThrottled(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && (response.getStatusCode().value() == 429 || response.getStatusCode().is5xxServerError());
     }
 
-    private String extractName(String from) {
-        if (from == null) return null;
-        if (from.contains("<")) return from.substring(0, from.indexOf("<")).trim().replaceAll("[\"']", "");
-        return from.trim();
+    private Mono<ScannedMessage> fetchMessage(WebClient client, String msgId, List<String> throttled) {
+        return client.get()
+                .uri("/users/me/messages/" + msgId + METADATA_QUERY)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(messageParser::parseGmailMessage)
+                .onErrorResume(e -> {
+                    if (isThrottled(e)) throttled.add(msgId);
+                    else log.debug("Error processing message {}: {}", msgId, e.getMessage());
+                    return Mono.empty();
+                });
     }
 
-    private String extractDomain(String email) {
-        if (email == null || !email.contains("@")) return null;
-        return email.substring(email.indexOf("@") + 1).toLowerCase();
+    // Fetches up to 100 messages in a single multipart/mixed request to the Gmail batch endpoint.
+    // Sub-requests answered with 429/5xx, or missing from the response, are added to throttled;
+    // other failures are skipped.
+    private Flux<ScannedMessage> fetchBatch(WebClient client, List<String> msgIds, List<String> throttled) {
+        String boundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+        StringBuilder body = new StringBuilder();
+        for (String msgId : msgIds) {
+            body.append("--").append(boundary).append("\r\n")
+                .append("Content-Type: application/http\r\n")
+                .append("Content-ID: <").append(msgId).append(">\r\n\r\n")
+                .append("GET /gmail/v1/users/me/messages/").append(msgId).append(METADATA_QUERY).append("\r\n\r\n");
+        }
+        body.append("--").append(boundary).append("--\r\n");
+
+        // Parts are handled as they stream in, so a failure part-way through only concerns the
+        // messages that have not been answered yet
+        Set<String> answered = new HashSet<>();
+        return client.post()
+                .uri(GMAIL_BATCH_API)
+                .contentType(MediaType.parseMediaType("multipart/mixed; boundary=" + boundary))
+                .bodyValue(body.toString())
+                .retrieve()
+                .toEntityFlux(DataBuffer.class)
+                .flatMapMany(response -> GmailBatchParser.parse(response.getHeaders().getContentType(),
+                        response.getBody(), messageParser::gmailMessageFeed))
+                .concatMap(part -> {
+                    if (part.contentId != null) answered.add(part.contentId);
+
+                    if (part.status >= 200 && part.status < 300) {
+                        if (part.message != null) return Mono.just(part.message);
+                        log.debug("Error processing batched message {}: unreadable body", part.contentId);
+                    } else if ((part.status == 429 || part.status >= 500) && part.contentId != null) {
+                        throttled.add(part.contentId);
+                    } else {
+                        log.debug("Batched fetch of message {} failed with status {}", part.contentId, part.status);
+                    }
+                    return Mono.empty();
+                })
+                .concatWith(Mono.fromRunnable(() -> unanswered(msgIds, answered).forEach(throttled::add)))
+                .onErrorResume(e -> {
+                    List<String> rest = unanswered(msgIds, answered);
+                    if (isThrottled(e)) {
+                        throttled.addAll(rest);
+                        return Flux.empty();
+                    }
+                    log.warn("Gmail batch request failed, falling back to single fetches: {}", e.getMessage());
+                    return Flux.fromIterable(rest).concatMap(msgId -> fetchMessage(client, msgId, throttled));
+                });
     }
 
-    private String extractUrl(String header) {
-        Matcher m = UNSUBSCRIBE_URL_PATTERN.matcher(header);
-        return m.find() ? m.group(1) : null;
+    private static List<String> unanswered(List<String> msgIds, Set<String> answered) {
+        return msgIds.stream().filter(msgId -> !answered.contains(msgId)).toList();
     }
 
-    private String extractMailto(String header) {
-        Matcher m = UNSUBSCRIBE_MAILTO_PATTERN.matcher(header);
-        return m.find() ? m.group(1) : null;
+    private Mono<JsonNode> readTree(String json) {
+        return Mono.fromCallable(() -> objectMapper.readTree(json));
     }
 
-    private String determineUnsubscribeType(String postHeader, String url) {
-        if (postHeader != null && postHeader.contains("One-Click")) return "one-click";
-        if (url != null) return "link";
-        return "mailto";
+    private void aggregateMessage(ScannedMessage msg, Map<String, SubscriptionData> senderMap) {
+        String from = msg.from, subject = msg.subject, unsubscribeHeader = msg.listUnsubscribe,
+                unsubscribePost = msg.listUnsubscribePost;
+
+        // Only process emails with unsubscribe header
+        if (unsubscribeHeader == null || unsubscribeHeader.isEmpty()) return;
+
+        MailHeaderParser.Address sender = headerParser.parseFrom(from);
+        String senderEmail = sender.email;
+        String senderName = sender.name;
+        if (senderEmail == null) return;
+
+        String domain = headerParser.extractDomain(senderEmail);
+        MailHeaderParser.UnsubscribeTargets targets = headerParser.parseListUnsubscribe(unsubscribeHeader);
+        String unsubscribeUrl = targets.url;
+        String unsubscribeMailto = targets.mailto;
+        String unsubType = headerParser.unsubscribeType(unsubscribePost, unsubscribeUrl);
+
+        SubscriptionData data = senderMap.computeIfAbsent(senderEmail, k -> new SubscriptionData());
+        data.senderEmail = senderEmail;
+        data.senderName = senderName;
+        data.domain = domain;
+        data.unsubscribeUrl = unsubscribeUrl;
+        data.unsubscribeMailto = unsubscribeMailto;
+        data.unsubscribeType = unsubType;
+        data.count(msg.receivedAt);
+        if (subject != null) data.subjects.add(subject);
     }
 
     // Inner class to hold aggregated sender data during scan
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
     static class SubscriptionData {
         String senderEmail;
         String senderName;
@@ -278,6 +452,24 @@ public class GmailScanService {
         String unsubscribeMailto;
         String unsubscribeType;
         int emailCount = 0;
+        // yyyy-MM-dd -> messages received that day (UTC), only for days inside the recent-count window
+        Map<String, Integer> recentDays = new TreeMap<>();
         Set<String> subjects = new LinkedHashSet<>();
+
+        void count(Instant receivedAt) {
+            emailCount++;
+            if (receivedAt == null) return;
+            LocalDate day = LocalDate.ofInstant(receivedAt, ZoneOffset.UTC);
+            if (day.isAfter(SubscriptionUpsertService.recentCutoff())) {
+                recentDays.merge(day.toString(), 1, Integer::sum);
+            }
+        }
+    }
+
+    // One page of a messages.list or history.list response
+    private static class ListPage {
+        String nextPageToken;
+        String historyId;
+        List<String> messageIds = new ArrayList<>();
     }
 }
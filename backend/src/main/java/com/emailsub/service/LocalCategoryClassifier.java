@@ -0,0 +1,268 @@
+package com.emailsub.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+// Categorizes a sender without an LLM when it can be confident: first well-known domains and
+// keyword rules, then a multinomial naive Bayes model over domain and sender name tokens. The model
+// is retrained in the background from community_senders and user_corrections; only LLM-labelled
+// (or legacy, unattributed) and user-corrected rows are used, so it never learns from its own output.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LocalCategoryClassifier {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DomainNormalizer domainNormalizer;
+
+    @Value("${app.categorization.local.min-confidence}")
+    private double minConfidence;
+
+    @Value("${app.categorization.local.min-training-senders}")
+    private int minTrainingSenders;
+
+    public record Classification(String category, double confidence, String source) {
+    }
+
+    // Distinctive brand names, matched as the label left of the public suffix under any suffix
+    private static final Map<String, String> KNOWN_BRANDS = new HashMap<>();
+
+    // Brands whose name is a short or everyday word (delta, target, wise, hm) would also match
+    // unrelated senders under other suffixes (delta.org, hm.edu), so only their own registrable
+    // domains are known
+    private static final Map<String, String> KNOWN_DOMAINS = new HashMap<>();
+
+    // Whole domain labels or sender name words that point at a category
+    private static final Map<String, String> KEYWORDS = new HashMap<>();
+
+    static {
+        known("Jobs", "linkedin", "indeed", "glassdoor", "naukri", "ziprecruiter", "wellfound", "angellist",
+                "internshala", "monster.com", "foundit.in", "dice.com", "hired.com", "myworkday.com",
+                "greenhouse.io", "lever.co");
+        known("Finance", "paypal", "hdfcbank", "icicibank", "axisbank", "kotak", "americanexpress",
+                "wellsfargo", "bankofamerica", "capitalone", "barclays", "revolut", "robinhood", "zerodha",
+                "groww", "paytm", "phonepe", "razorpay", "coinbase", "binance", "venmo", "chase.com",
+                "sbi.co.in", "onlinesbi.sbi", "citi.com", "aexp.com", "hsbc.com", "hsbc.co.in", "hsbc.co.uk",
+                "wise.com", "stripe.com", "mint.com", "cred.club");
+        known("Shopping", "amazon", "flipkart", "ebay", "etsy", "walmart", "bestbuy", "myntra", "ajio",
+                "meesho", "nykaa", "aliexpress", "shein", "ikea", "nike", "adidas", "swiggy", "zomato",
+                "instacart", "doordash", "ubereats", "bigbasket", "blinkit", "target.com", "zara.com",
+                "hm.com", "zepto.com");
+        known("Learning", "coursera", "udemy", "khanacademy", "duolingo", "udacity", "skillshare",
+                "codecademy", "datacamp", "leetcode", "hackerrank", "pluralsight", "byjus", "unacademy",
+                "freecodecamp", "edx.org", "brilliant.org", "scaler.com", "educative.io");
+        known("News", "nytimes", "washingtonpost", "theguardian", "reuters", "bloomberg", "hindustantimes",
+                "timesofindia", "indiatimes", "thehindu", "ndtv", "substack", "morningbrew", "techcrunch",
+                "theverge", "bbc.com", "bbc.co.uk", "cnn.com", "economist.com", "wsj.com", "ft.com",
+                "medium.com", "axios.com", "wired.com");
+        known("Social", "facebook", "facebookmail", "instagram", "twitter", "reddit", "redditmail",
+                "pinterest", "tiktok", "quora", "snapchat", "tumblr", "nextdoor", "whatsapp", "mastodon",
+                "discord.com", "meetup.com", "telegram.org", "threads.net");
+        known("Travel", "expedia", "airbnb", "makemytrip", "goibibo", "cleartrip", "ixigo", "tripadvisor",
+                "skyscanner", "agoda", "trivago", "airindia", "qatarairways", "lufthansa", "ryanair",
+                "easyjet", "irctc", "booking.com", "kayak.com", "hotels.com", "goindigo.in", "emirates.com",
+                "delta.com", "united.com", "aa.com", "southwest.com", "uber.com", "lyft.com", "olacabs.com",
+                "redbus.in");
+        known("Health", "practo", "pharmeasy", "netmeds", "healthifyme", "myfitnesspal", "fitbit", "strava",
+                "headspace", "curefit", "zocdoc", "teladoc", "apollo247", "1mg.com", "calm.com", "cult.fit");
+        known("Entertainment", "netflix", "spotify", "youtube", "primevideo", "hulu", "disneyplus",
+                "hotstar", "steampowered", "epicgames", "soundcloud", "goodreads", "bookmyshow", "imdb",
+                "playstation", "xbox", "nintendo", "crunchyroll", "jiocinema", "twitch.tv", "audible.com");
+
+        keywords("Jobs", "jobs", "job", "careers", "career", "hiring", "recruit", "recruiting",
+                "recruitment", "talent", "resume", "internship");
+        keywords("Finance", "bank", "banking", "finance", "financial", "invest", "investing", "capital",
+                "credit", "loan", "loans", "insurance", "wallet", "pay", "payments", "tax", "trading",
+                "brokerage", "mutualfund");
+        keywords("Shopping", "shop", "shopping", "store", "deals", "deal", "sale", "outlet", "mart",
+                "fashion", "boutique", "cart", "orders");
+        keywords("Learning", "academy", "learn", "learning", "course", "courses", "university", "edu",
+                "school", "college", "tutor", "classes");
+        keywords("News", "news", "newsletter", "daily", "digest", "times", "journal", "gazette",
+                "tribune", "herald", "weekly", "briefing");
+        keywords("Social", "social", "community", "forum", "friends");
+        keywords("Travel", "travel", "travels", "airline", "airlines", "airways", "flights", "flight",
+                "hotel", "hotels", "trip", "trips", "tours", "holidays", "vacation", "railways");
+        keywords("Health", "health", "healthcare", "clinic", "hospital", "pharmacy", "fitness", "gym",
+                "wellness", "medical", "doctor", "dental", "yoga");
+        keywords("Entertainment", "music", "movies", "movie", "games", "gaming", "tv", "stream",
+                "streaming", "tickets", "podcast", "comics", "anime");
+    }
+
+    // A name with a dot is a registrable domain, anything else a brand label
+    private static void known(String category, String... names) {
+        for (String name : names) (name.contains(".") ? KNOWN_DOMAINS : KNOWN_BRANDS).put(name, category);
+    }
+
+    private static void keywords(String category, String... words) {
+        for (String word : words) KEYWORDS.put(word, category);
+    }
+
+    // Labels that say nothing about the sender
+    private static final Set<String> STOP_TOKENS = Set.of(
+            "com", "net", "org", "co", "io", "in", "uk", "us", "ca", "au", "de", "info", "biz", "app",
+            "www", "mail", "email", "emails", "mailer", "mailing", "e", "em", "m", "mg", "send", "sender",
+            "noreply", "no", "reply", "notification", "notifications", "alerts", "updates", "team", "the",
+            "and", "from", "your", "inc", "ltd", "llc", "pvt", "via", "marketing", "promo", "hello"
+    );
+
+    // Share of senders a single keyword hit gets right; each further distinct hit for the same
+    // category (net of hits for other categories) is treated as independent evidence
+    private static final double KEYWORD_PRECISION = 0.8;
+
+    private static final String[] CATEGORIES = AiCategorizationService.VALID_CATEGORIES.toArray(new String[0]);
+
+    private static final String TRAINING_SQL =
+            "SELECT cs.domain, cs.sender_name, cs.category FROM community_senders cs " +
+            "WHERE (cs.categorized_by NOT IN ('fallback', 'local') OR cs.categorized_by IS NULL) " +
+            "UNION ALL " +
+            "SELECT cs.domain, cs.sender_name, uc.corrected_category FROM user_corrections uc " +
+            "JOIN community_senders cs ON cs.id = uc.community_sender_id " +
+            "WHERE uc.corrected_category IS NOT NULL";
+
+    private volatile NaiveBayes model;
+
+    // Returns a category only when it is at least min-confidence sure, otherwise null
+    public Classification classify(String domain, String senderName) {
+        if (domain == null) return null;
+
+        String known = KNOWN_DOMAINS.get(domainNormalizer.registrableDomain(domain));
+        if (known != null) return new Classification(known, 0.99, "domain-rule");
+
+        // The brand is the label left of the public suffix: e.mail.linkedin.com, linkedin.fr -> linkedin
+        String brand = domainNormalizer.registrableLabel(domain);
+        if (brand != null) {
+            String category = KNOWN_BRANDS.get(brand);
+            if (category != null) return new Classification(category, 0.99, "domain-rule");
+        }
+
+        List<String> labels = tokenize(domain);
+        Classification byKeywords = classifyByKeywords(labels, tokenize(senderName));
+        if (byKeywords != null && byKeywords.confidence() >= minConfidence) return byKeywords;
+
+        NaiveBayes current = model;
+        if (current == null) return null;
+        List<String> tokens = new ArrayList<>(labels);
+        tokens.addAll(tokenize(senderName));
+        Classification prediction = current.predict(tokens);
+        return prediction != null && prediction.confidence() >= minConfidence ? prediction : null;
+    }
+
+    // Each distinct keyword is one vote; the winner's confidence grows with its lead over the rest,
+    // so one keyword alone (0.8) is not enough at the default min-confidence but two agreeing are
+    private Classification classifyByKeywords(List<String> labels, List<String> nameTokens) {
+        Map<String, Set<String>> hits = new HashMap<>();
+        for (List<String> tokens : List.of(labels, nameTokens)) {
+            for (String token : tokens) {
+                String category = KEYWORDS.get(token);
+                if (category != null) hits.computeIfAbsent(category, c -> new HashSet<>()).add(token);
+            }
+        }
+        if (hits.isEmpty()) return null;
+
+        String best = null;
+        int bestHits = 0;
+        int totalHits = 0;
+        for (Map.Entry<String, Set<String>> entry : hits.entrySet()) {
+            int n = entry.getValue().size();
+            totalHits += n;
+            if (n > bestHits) {
+                best = entry.getKey();
+                bestHits = n;
+            }
+        }
+        int lead = bestHits - (totalHits - bestHits);
+        if (lead <= 0) return null;
+        return new Classification(best, 1 - Math.pow(1 - KEYWORD_PRECISION, lead), "keyword-rule");
+    }
+
+    @Scheduled(fixedDelayString = "${app.categorization.local.retrain-interval-ms}")
+    public void retrain() {
+        NaiveBayes trained = new NaiveBayes();
+        jdbcTemplate.query(TRAINING_SQL, rs -> {
+            int label = Arrays.asList(CATEGORIES).indexOf(rs.getString(3));
+            if (label < 0) return;
+            List<String> tokens = tokenize(rs.getString(1));
+            tokens.addAll(tokenize(rs.getString(2)));
+            trained.add(tokens, label);
+        });
+
+        if (trained.documents < minTrainingSenders) {
+            log.debug("Local classifier not trained, only {} labelled senders", trained.documents);
+            return;
+        }
+        model = trained;
+        log.info("Local classifier trained on {} labelled senders, {} tokens", trained.documents, trained.vocabulary());
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        for (String token : text.toLowerCase().split("[^a-z0-9]+")) {
+            if (token.length() >= 2 && !STOP_TOKENS.contains(token)) tokens.add(token);
+        }
+        return tokens;
+    }
+
+    // Multinomial naive Bayes with add-one smoothing. Built once per retrain and read-only after.
+    private static class NaiveBayes {
+        final Map<String, int[]> tokenCounts = new HashMap<>();
+        final int[] documentsPerClass = new int[CATEGORIES.length];
+        final int[] tokensPerClass = new int[CATEGORIES.length];
+        int documents;
+
+        void add(List<String> tokens, int label) {
+            documents++;
+            documentsPerClass[label]++;
+            for (String token : tokens) {
+                tokenCounts.computeIfAbsent(token, t -> new int[CATEGORIES.length])[label]++;
+                tokensPerClass[label]++;
+            }
+        }
+
+        int vocabulary() {
+            return tokenCounts.size();
+        }
+
+        Classification predict(List<String> tokens) {
+            // Tokens never seen in training carry no evidence
+            List<int[]> known = new ArrayList<>();
+            for (String token : tokens) {
+                int[] counts = tokenCounts.get(token);
+                if (counts != null) known.add(counts);
+            }
+            if (known.isEmpty()) return null;
+
+            double[] logPosterior = new double[CATEGORIES.length];
+            double best = Double.NEGATIVE_INFINITY;
+            int bestClass = -1;
+            for (int c = 0; c < CATEGORIES.length; c++) {
+                if (documentsPerClass[c] == 0) {
+                    logPosterior[c] = Double.NEGATIVE_INFINITY;
+                    continue;
+                }
+                double logP = Math.log((double) documentsPerClass[c] / documents);
+                double denominator = tokensPerClass[c] + vocabulary();
+                for (int[] counts : known) logP += Math.log((counts[c] + 1) / denominator);
+                logPosterior[c] = logP;
+                if (logP > best) {
+                    best = logP;
+                    bestClass = c;
+                }
+            }
+
+            // Normalize to a probability of the winning class
+            double sum = 0;
+            for (double logP : logPosterior) {
+                if (logP != Double.NEGATIVE_INFINITY) sum += Math.exp(logP - best);
+            }
+            return new Classification(CATEGORIES[bestClass], 1 / sum, "naive-bayes");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.emailsub.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Single-pass parsers for the RFC 5322 From header and the RFC 2369 / RFC 8058
+// List-Unsubscribe and List-Unsubscribe-Post headers, shared by both scan services.
+// No regexes: each header is walked once and only the returned values are allocated.
+@Component
+@RequiredArgsConstructor
+public class MailHeaderParser {
+
+    private final DomainNormalizer domainNormalizer;
+
+    public static class Address {
+        public final String email; // lowercased addr-spec, null if none found
+        public final String name;  // decoded display name, falls back to the raw header
+
+        Address(String email, String name) {
+            this.email = email;
+            this.name = name;
+        }
+    }
+
+    public static class UnsubscribeTargets {
+        public final String url;    // first http(s) URI
+        public final String mailto; // first mailto URI, without the scheme
+
+        UnsubscribeTargets(String url, String mailto) {
+            this.url = url;
+            this.mailto = mailto;
+        }
+    }
+
+    // Handles `Name <a@b>`, `"Last, First" <a@b>`, `<a@b>`, `a@b`, `a@b (Name)`,
+    // RFC 2047 encoded-word names and a missing closing '>'.
+    public Address parseFrom(String from) {
+        if (from == null) return new Address(null, null);
+
+        int len = from.length();
+        boolean inQuotes = false;
+        int commentDepth = 0;
+        int angleStart = -1;
+        int commentStart = -1, commentEnd = -1;
+
+        for (int i = 0; i < len && angleStart < 0; i++) {
+            char c = from.charAt(i);
+            if (inQuotes) {
+                if (c == '\\') i++;
+                else if (c == '"') inQuotes = false;
+            } else if (commentDepth > 0) {
+                if (c == '\\') i++;
+                else if (c == '(') commentDepth++;
+                else if (c == ')' && --commentDepth == 0 && commentEnd < 0) commentEnd = i;
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == '(') {
+                if (commentStart < 0) commentStart = i + 1;
+                commentDepth = 1;
+            } else if (c == '<') {
+                angleStart = i;
+            }
+        }
+
+        String email;
+        String name;
+        if (angleStart >= 0) {
+            int angleEnd = from.indexOf('>', angleStart + 1);
+            email = normalizeAddress(from, angleStart + 1, angleEnd < 0 ? len : angleEnd);
+            name = displayName(from, 0, angleStart);
+        } else {
+            int addrEnd = commentStart > 0 ? commentStart - 1 : len;
+            email = normalizeAddress(from, 0, addrEnd);
+            if (email == null && commentEnd > 0) {
+                // `(Name) a@b`
+                email = normalizeAddress(from, commentEnd + 1, len);
+            }
+            name = commentStart > 0
+                    ? displayName(from, commentStart, commentEnd < 0 ? len : commentEnd)
+                    : null;
+        }
+
+        if (name == null || name.isEmpty()) name = email != null ? email : from.trim();
+        return new Address(email, name);
+    }
+
+    // Registrable domain of the address, the key community senders are stored under
+    public String extractDomain(String email) {
+        if (email == null) return null;
+        int at = email.lastIndexOf('@');
+        if (at < 0 || at == email.length() - 1) return null;
+        return domainNormalizer.registrableDomain(email.substring(at + 1));
+    }
+
+    // Entries are `<uri>` separated by commas; bare URIs without brackets are accepted too
+    public UnsubscribeTargets parseListUnsubscribe(String header) {
+        if (header == null) return new UnsubscribeTargets(null, null);
+
+        String url = null;
+        String mailto = null;
+        int len = header.length();
+        int i = 0;
+        while (i < len && (url == null || mailto == null)) {
+            // Skip separators
+            char c = header.charAt(i);
+            if (c == ',' || Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int start, end, next;
+            if (c == '<') {
+                start = i + 1;
+                int close = header.indexOf('>', start);
+                end = close < 0 ? len : close;
+                next = close < 0 ? len : close + 1;
+            } else {
+                start = i;
+                int comma = header.indexOf(',', start);
+                end = comma < 0 ? len : comma;
+                next = end;
+            }
+
+            // Trim whitespace inside the entry, folded headers can leave some behind
+            while (start < end && Character.isWhitespace(header.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(header.charAt(end - 1))) end--;
+
+            if (url == null && (startsWithIgnoreCase(header, start, end, "https://")
+                    || startsWithIgnoreCase(header, start, end, "http://"))) {
+                url = header.substring(start, end);
+            } else if (mailto == null && startsWithIgnoreCase(header, start, end, "mailto:")) {
+                if (end - start > "mailto:".length()) mailto = header.substring(start + "mailto:".length(), end);
+            }
+            i = next;
+        }
+        return new UnsubscribeTargets(url, mailto);
+    }
+
+    // RFC 8058: the POST body must be exactly "List-Unsubscribe=One-Click"
+    public boolean isOneClick(String postHeader) {
+        if (postHeader == null) return false;
+        // Matched on the value alone, some senders drop or misspell the key
+        int len = postHeader.length();
+        for (int i = 0; i + 9 <= len; i++) {
+            if (postHeader.regionMatches(true, i, "One-Click", 0, 9)) return true;
+        }
+        return false;
+    }
+
+    public String unsubscribeType(String postHeader, String url) {
+        if (url != null && isOneClick(postHeader)) return "one-click";
+        if (url != null) return "link";
+        return "mailto";
+    }
+
+    private String normalizeAddress(String s, int start, int end) {
+        while (start < end && (Character.isWhitespace(s.charAt(start)) || s.charAt(start) == '<')) start++;
+        while (end > start && (Character.isWhitespace(s.charAt(end - 1))
+                || s.charAt(end - 1) == '>' || s.charAt(end - 1) == '.' || s.charAt(end - 1) == ',')) end--;
+
+        // Strip a mailto: prefix, some list managers put it into From
+        if (startsWithIgnoreCase(s, start, end, "mailto:")) start += "mailto:".length();
+
+        int at = -1;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '@') {
+                at = i;
+            } else if (Character.isWhitespace(c) || c == ',' || c == ';') {
+                // Multiple or garbled addresses: keep the first complete one
+                if (at > start) {
+                    end = i;
+                    break;
+                }
+                start = i + 1;
+            }
+        }
+        if (at <= start || at >= end - 1) return null;
+        return s.substring(start, end).toLowerCase();
+    }
+
+    private String displayName(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) end--;
+        if (start >= end) return null;
+
+        StringBuilder out = new StringBuilder(end - start);
+        boolean inQuotes = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == '\\' && inQuotes && i + 1 < end) {
+                out.append(s.charAt(++i));
+            } else if (c != '\'' || (i != start && i != end - 1)) {
+                // Stray single quotes around the whole name are dropped
+                out.append(c);
+            }
+        }
+
+        String name = out.toString().trim();
+        return name.contains("=?") ? decodeEncodedWords(name) : name;
+    }
+
+    // RFC 2047 `=?charset?B|Q?text?=`; whitespace between adjacent encoded words is dropped
+    String decodeEncodedWords(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        int i = 0;
+        int len = s.length();
+        boolean lastWasEncoded = false;
+
+        while (i < len) {
+            int begin = s.indexOf("=?", i);
+            if (begin < 0) {
+                out.append(s, i, len);
+                break;
+            }
+
+            int charsetEnd = s.indexOf('?', begin + 2);
+            int encodingEnd = charsetEnd < 0 ? -1 : s.indexOf('?', charsetEnd + 1);
+            int wordEnd = encodingEnd < 0 ? -1 : s.indexOf("?=", encodingEnd + 1);
+            if (wordEnd < 0 || encodingEnd != charsetEnd + 2) {
+                out.append(s, i, len);
+                break;
+            }
+
+            String gap = s.substring(i, begin);
+            if (!(lastWasEncoded && gap.isBlank())) out.append(gap);
+
+            String decoded = decodeWord(s.substring(begin + 2, charsetEnd),
+                    s.charAt(charsetEnd + 1), s.substring(encodingEnd + 1, wordEnd));
+            if (decoded != null) {
+                out.append(decoded);
+                lastWasEncoded = true;
+            } else {
+                out.append(s, begin, wordEnd + 2);
+                lastWasEncoded = false;
+            }
+            i = wordEnd + 2;
+        }
+        return out.toString().trim();
+    }
+
+    private String decodeWord(String charsetName, char encoding, String text) {
+        Charset charset;
+        try {
+            // RFC 2231 allows a language suffix: utf-8*en
+            int star = charsetName.indexOf('*');
+            charset = Charset.forName(star < 0 ? charsetName : charsetName.substring(0, star));
+        } catch (Exception e) {
+            charset = StandardCharsets.UTF_8;
+        }
+
+        try {
+            if (encoding == 'B' || encoding == 'b') {
+                return new String(Base64.getMimeDecoder().decode(text), charset);
+            }
+            if (encoding == 'Q' || encoding == 'q') {
+                byte[] bytes = new byte[text.length()];
+                int n = 0;
+                for (int i = 0; i < text.length(); i++) {
+                    char c = text.charAt(i);
+                    if (c == '_') {
+                        bytes[n++] = ' ';
+                    } else if (c == '=' && i + 2 < text.length()
+                            && Character.digit(text.charAt(i + 1), 16) >= 0
+                            && Character.digit(text.charAt(i + 2), 16) >= 0) {
+                        bytes[n++] = (byte) ((Character.digit(text.charAt(i + 1), 16) << 4)
+                                | Character.digit(text.charAt(i + 2), 16));
+                        i += 2;
+                    } else {
+                        bytes[n++] = (byte) c;
+                    }
+                }
+                return new String(bytes, 0, n, charset);
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private boolean startsWithIgnoreCase(String s, int start, int end, String prefix) {
+        return end - start >= prefix.length() && s.regionMatches(true, start, prefix, 0, prefix.length());
+    }
+}
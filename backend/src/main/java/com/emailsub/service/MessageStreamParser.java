@@ -0,0 +1,318 @@
+package com.emailsub.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Pulls the sender and unsubscribe headers out of Gmail and Graph responses with Jackson's
+// non-blocking parser, fed straight from WebClient DataBuffers. No JsonNode tree or full response
+// body is built, and a scalar only becomes a String when its position, field name and (for header
+// entries) header name say we keep it; header names are matched against the kept ones in place.
+@Component
+public class MessageStreamParser {
+
+    private final JsonFactory jsonFactory;
+
+    public MessageStreamParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    // A users.messages.get?format=metadata response
+    public Mono<ScannedMessage> parseGmailMessage(Flux<DataBuffer> body) {
+        return parse(body, GmailMessageHandler::new);
+    }
+
+    // One sub-response body of a Gmail batch request, fed piece by piece as the multipart arrives
+    Feed<ScannedMessage> gmailMessageFeed() {
+        return new Feed<>(jsonFactory, new GmailMessageHandler());
+    }
+
+    // A Graph /messages or /messages/delta page
+    public Mono<GraphPage> parseGraphPage(Flux<DataBuffer> body) {
+        return parse(body, GraphPageHandler::new);
+    }
+
+    private <T> Mono<T> parse(Flux<DataBuffer> body, Supplier<TokenHandler<T>> handlerFactory) {
+        return Mono.defer(() -> {
+            Feed<T> feed;
+            try {
+                feed = new Feed<>(jsonFactory, handlerFactory.get());
+            } catch (UncheckedIOException e) {
+                return Mono.error(e.getCause());
+            }
+
+            return body
+                    .doOnNext(buffer -> {
+                        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                            while (chunks.hasNext()) {
+                                feed.feed(chunks.next());
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(feed::finish))
+                    .doFinally(signal -> feed.close());
+        });
+    }
+
+    // One JSON document parsed as its bytes arrive. Each fed buffer is fully consumed before
+    // feed returns, so callers may reuse it afterwards.
+    static final class Feed<T> {
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private final TokenHandler<T> handler;
+
+        private Feed(JsonFactory jsonFactory, TokenHandler<T> handler) {
+            try {
+                this.parser = jsonFactory.createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+            this.handler = handler;
+        }
+
+        void feed(ByteBuffer bytes) throws IOException {
+            feeder.feedInput(bytes);
+            drain();
+        }
+
+        T finish() throws IOException {
+            feeder.endOfInput();
+            drain();
+            close();
+            return handler.result();
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handler.onToken(token, parser);
+            }
+        }
+    }
+
+    // Epoch milliseconds (Gmail internalDate) or ISO-8601 (Graph); null when absent or malformed
+    private static Instant parseInstant(String value, boolean epochMillis) {
+        if (value == null) return null;
+        try {
+            return epochMillis ? Instant.ofEpochMilli(Long.parseLong(value)) : Instant.parse(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String text(JsonToken token, JsonParser parser) throws IOException {
+        return token == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    // The kept header a "name" value spells (any case), or null, without building a String for it
+    private static String keptHeader(String[] kept, JsonToken token, JsonParser parser) throws IOException {
+        if (token != JsonToken.VALUE_STRING) return null;
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (String header : kept) {
+            if (header.length() != length) continue;
+            int i = 0;
+            while (i < length && Character.toLowerCase(chars[offset + i]) == header.charAt(i)) i++;
+            if (i == length) return header;
+        }
+        return null;
+    }
+
+    // One {"name": ..., "value": ...} header entry. Providers send the name first, so the value of
+    // an unkept header is never read; a value seen before any name is kept until the name decides.
+    private static class HeaderEntry {
+        final String[] kept; // lower-cased names
+        boolean named;
+        String name;
+        String value;
+
+        HeaderEntry(String... kept) {
+            this.kept = kept;
+        }
+
+        void onValue(String field, JsonToken token, JsonParser parser) throws IOException {
+            if (field.equals("name")) {
+                named = true;
+                name = keptHeader(kept, token, parser);
+            } else if (field.equals("value") && (!named || name != null)) {
+                value = text(token, parser);
+            }
+        }
+
+        void applyTo(ScannedMessage message) {
+            if (name != null) message.setHeader(name, value);
+            named = false;
+            name = null;
+            value = null;
+        }
+    }
+
+    public static class GraphPage {
+        final List<ScannedMessage> messages = new ArrayList<>();
+        String nextLink;
+        String deltaLink;
+    }
+
+    // Tracks the field name that opened each enclosing container ("" for the root and array
+    // elements), so handlers can match values by position without building a tree.
+    private abstract static class TokenHandler<T> {
+        final List<String> path = new ArrayList<>();
+        String fieldName;
+
+        void onToken(JsonToken token, JsonParser parser) throws IOException {
+            switch (token) {
+                case FIELD_NAME -> fieldName = parser.currentName();
+                case START_OBJECT, START_ARRAY -> {
+                    path.add(fieldName != null ? fieldName : "");
+                    fieldName = null;
+                    onStart(token);
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    onEnd(token);
+                    path.remove(path.size() - 1);
+                    fieldName = null;
+                }
+                default -> {
+                    if (token.isScalarValue() && fieldName != null) {
+                        onValue(fieldName, token, parser);
+                    }
+                    fieldName = null;
+                }
+            }
+        }
+
+        boolean at(int depth, String name) {
+            return path.size() > depth && path.get(depth).equals(name);
+        }
+
+        void onStart(JsonToken token) {
+        }
+
+        void onEnd(JsonToken token) {
+        }
+
+        // Reads nothing by itself; handlers call text() for the values they keep
+        abstract void onValue(String field, JsonToken token, JsonParser parser) throws IOException;
+
+        abstract T result();
+    }
+
+    // {"id": ..., "payload": {"headers": [{"name": ..., "value": ...}]}}
+    private static class GmailMessageHandler extends TokenHandler<ScannedMessage> {
+        final ScannedMessage message = new ScannedMessage();
+        final HeaderEntry header = new HeaderEntry("from", "subject", "date", "list-unsubscribe", "list-unsubscribe-post");
+
+        private boolean inHeader() {
+            return path.size() == 4 && at(1, "payload") && at(2, "headers");
+        }
+
+        @Override
+        void onValue(String field, JsonToken token, JsonParser parser) throws IOException {
+            if (path.size() == 1 && field.equals("internalDate")) {
+                message.receivedAt = parseInstant(text(token, parser), true);
+            } else if (inHeader()) {
+                header.onValue(field, token, parser);
+            }
+        }
+
+        @Override
+        void onEnd(JsonToken token) {
+            if (token == JsonToken.END_OBJECT && inHeader()) {
+                header.applyTo(message);
+            }
+        }
+
+        @Override
+        ScannedMessage result() {
+            return message;
+        }
+    }
+
+    // {"value": [{"subject": ..., "sender": {"emailAddress": {...}}, "internetMessageHeaders": [...]}],
+    //  "@odata.nextLink": ..., "@odata.deltaLink": ...}
+    private static class GraphPageHandler extends TokenHandler<GraphPage> {
+        final GraphPage page = new GraphPage();
+        ScannedMessage current;
+        // Subject/Date come from the message resource and win over the raw header values
+        final HeaderEntry header = new HeaderEntry("from", "list-unsubscribe", "list-unsubscribe-post");
+
+        private boolean inMessage() {
+            return path.size() >= 3 && at(1, "value");
+        }
+
+        @Override
+        void onStart(JsonToken token) {
+            if (token == JsonToken.START_OBJECT && path.size() == 3 && at(1, "value")) {
+                current = new ScannedMessage();
+            }
+        }
+
+        @Override
+        void onValue(String field, JsonToken token, JsonParser parser) throws IOException {
+            if (path.size() == 1) {
+                if (field.equals("@odata.nextLink")) page.nextLink = text(token, parser);
+                else if (field.equals("@odata.deltaLink")) page.deltaLink = text(token, parser);
+                return;
+            }
+            if (!inMessage() || current == null) return;
+
+            if (path.size() == 3) {
+                if (field.equals("subject")) current.subject = text(token, parser);
+                else if (field.equals("receivedDateTime")) {
+                    current.date = text(token, parser);
+                    current.receivedAt = parseInstant(current.date, false);
+                }
+            } else if (path.size() == 5 && at(3, "sender") && at(4, "emailAddress")) {
+                if (field.equals("name")) current.senderName = text(token, parser);
+                else if (field.equals("address")) current.senderAddress = text(token, parser);
+            } else if (path.size() == 5 && at(3, "internetMessageHeaders")) {
+                header.onValue(field, token, parser);
+            }
+        }
+
+        @Override
+        void onEnd(JsonToken token) {
+            if (token != JsonToken.END_OBJECT || !inMessage() || current == null) return;
+
+            if (path.size() == 5 && at(3, "internetMessageHeaders")) {
+                header.applyTo(current);
+            } else if (path.size() == 3) {
+                page.messages.add(current);
+                current = null;
+            }
+        }
+
+        @Override
+        GraphPage result() {
+            return page;
+        }
+    }
+}
@@ -1,18 +1,16 @@
 package com.emailsub.service;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.*;
 import com.emailsub.repository.*;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 @RequiredArgsConstructor
@@ -20,18 +18,15 @@ import java.util.regex.Pattern;
 public class OutlookScanService {
 
     private final UserRepository userRepository;
-    private final UserSubscriptionRepository subscriptionRepository;
-    private final CommunitySenderRepository communitySenderRepository;
     private final SyncLogRepository syncLogRepository;
-    private final AiCategorizationService categorizationService;
     private final TokenRefreshService tokenRefreshService;
-    private final ObjectMapper objectMapper;
+    private final MessageStreamParser messageParser;
+    private final ScanCheckpointService checkpointService;
+    private final MailHeaderParser headerParser;
+    private final SubscriptionUpsertService upsertService;
+    private final HttpClientFactory httpClients;
 
     private static final String GRAPH_API = "https://graph.microsoft.com/v1.0";
-    private static final Pattern UNSUBSCRIBE_URL_PATTERN =
-            Pattern.compile("<(https?://[^>]+)>", Pattern.CASE_INSENSITIVE);
-    private static final Pattern UNSUBSCRIBE_MAILTO_PATTERN =
-            Pattern.compile("<mailto:([^>]+)>", Pattern.CASE_INSENSITIVE);
 
     public Map<String, Object> scanInbox(UUID userId) {
         User user = userRepository.findById(userId)
@@ -41,10 +36,17 @@ public class OutlookScanService {
             return Map.of("error", "Outlook not connected");
         }
 
+        // Picks up an interrupted scan where its last checkpoint left off
+        ScanCheckpoint checkpoint = checkpointService.resumeOrStart(
+                user, "outlook", user.getOutlookDeltaToken() == null ? "full" : "delta");
+        if (checkpoint == null) {
+            return Map.of("error", "Outlook scan already running");
+        }
+
         SyncLog syncLog = SyncLog.builder()
                 .user(user)
                 .accountType("outlook")
-                .syncType(user.getOutlookDeltaToken() == null ? "full" : "delta")
+                .syncType(checkpoint.getSyncType())
                 .status("running")
                 .build();
         syncLogRepository.save(syncLog);
@@ -56,48 +58,52 @@ public class OutlookScanService {
         try {
             String accessToken = tokenRefreshService.getValidOutlookToken(user);
 
-            WebClient client = WebClient.builder()
-                    .baseUrl(GRAPH_API)
+            WebClient client = httpClients.client(GRAPH_API).mutate()
                     .defaultHeader("Authorization", "Bearer " + accessToken)
                     .build();
 
-            Map<String, GmailScanService.SubscriptionData> senderMap = new HashMap<>();
-            String nextLink = buildInitialUrl(user.getOutlookDeltaToken());
+            Map<String, GmailScanService.SubscriptionData> senderMap = checkpointService.restoreSenders(checkpoint);
+            String nextLink = checkpoint.getPageToken() != null
+                    ? checkpoint.getPageToken()
+                    : buildInitialUrl(user.getOutlookDeltaToken());
             String newDeltaToken = null;
 
             while (nextLink != null) {
-                String response = client.get().uri(nextLink).retrieve().bodyToMono(String.class).block();
-                JsonNode root = objectMapper.readTree(response);
+                // Pages with internetMessageHeaders run to several MB, so they are parsed as a stream
+                MessageStreamParser.GraphPage page = client.get().uri(nextLink).retrieve()
+                        .bodyToFlux(DataBuffer.class)
+                        .as(messageParser::parseGraphPage)
+                        .block();
 
                 // Check for delta token in response
-                JsonNode deltaLink = root.path("@odata.deltaLink");
-                if (!deltaLink.isMissingNode()) {
-                    newDeltaToken = deltaLink.asText();
+                if (page.deltaLink != null) {
+                    newDeltaToken = page.deltaLink;
                 }
 
-                JsonNode nextLinkNode = root.path("@odata.nextLink");
-                nextLink = nextLinkNode.isMissingNode() ? null : nextLinkNode.asText();
+                nextLink = page.nextLink;
 
-                JsonNode messages = root.path("value");
-                if (messages.isArray()) {
-                    for (JsonNode msg : messages) {
-                        processMessage(msg, senderMap);
-                        emailsScanned++;
-                    }
+                for (ScannedMessage msg : page.messages) {
+                    processMessage(msg, senderMap);
                 }
-            }
 
-            for (Map.Entry<String, GmailScanService.SubscriptionData> entry : senderMap.entrySet()) {
-                if (saveOrUpdateSubscription(user, entry.getValue(), "outlook")) {
-                    newSenders++;
+                checkpoint.setPageToken(nextLink);
+                checkpoint.setEmailsScanned(checkpoint.getEmailsScanned() + page.messages.size());
+                checkpoint.setPagesProcessed(checkpoint.getPagesProcessed() + 1);
+                if (checkpointService.isDue(checkpoint)) {
+                    checkpointService.save(checkpoint, senderMap, syncLog);
                 }
             }
+            emailsScanned = checkpoint.getEmailsScanned();
+
+            newSenders = upsertService.upsertAll(user, senderMap.values(), "outlook",
+                    "delta".equals(checkpoint.getSyncType()));
 
             if (newDeltaToken != null) {
                 user.setOutlookDeltaToken(newDeltaToken);
                 user.setOutlookLastSync(LocalDateTime.now());
                 userRepository.save(user);
             }
+            checkpointService.clear(checkpoint);
 
             syncLog.setStatus("success");
             syncLog.setEmailsScanned(emailsScanned);
@@ -110,6 +116,7 @@ public class OutlookScanService {
 
         } catch (Exception e) {
             log.error("Outlook scan failed for user {}: {}", userId, e.getMessage());
+            checkpointService.release(checkpoint);
             syncLog.setStatus("failed");
             syncLog.setErrorMessage(e.getMessage());
             syncLog.setCompletedAt(LocalDateTime.now());
@@ -127,98 +134,41 @@ public class OutlookScanService {
                "$select=sender,subject,receivedDateTime,internetMessageHeaders&$top=100";
     }
 
-    private void processMessage(JsonNode msg, Map<String, GmailScanService.SubscriptionData> senderMap) {
+    private void processMessage(ScannedMessage msg, Map<String, GmailScanService.SubscriptionData> senderMap) {
         try {
-            String unsubscribeHeader = null;
-            String unsubscribePost = null;
-
-            JsonNode headers = msg.path("internetMessageHeaders");
-            if (headers.isArray()) {
-                for (JsonNode h : headers) {
-                    String name = h.path("name").asText().toLowerCase();
-                    if (name.equals("list-unsubscribe")) unsubscribeHeader = h.path("value").asText();
-                    if (name.equals("list-unsubscribe-post")) unsubscribePost = h.path("value").asText();
-                }
-            }
+            String unsubscribeHeader = msg.listUnsubscribe;
+            String unsubscribePost = msg.listUnsubscribePost;
 
             if (unsubscribeHeader == null) return;
 
-            String senderEmail = msg.path("sender").path("emailAddress").path("address").asText();
-            String senderName = msg.path("sender").path("emailAddress").path("name").asText();
-            String subject = msg.path("subject").asText();
+            String senderEmail = msg.senderAddress;
+            String senderName = msg.senderName != null ? msg.senderName : "";
+            String subject = msg.subject;
 
             if (senderEmail == null || senderEmail.isEmpty()) return;
 
-            String domain = senderEmail.contains("@") ?
-                    senderEmail.substring(senderEmail.indexOf("@") + 1).toLowerCase() : null;
+            senderEmail = senderEmail.toLowerCase();
+            String domain = headerParser.extractDomain(senderEmail);
             if (domain == null) return;
 
-            String unsubUrl = extractUrl(unsubscribeHeader);
-            String unsubMailto = extractMailto(unsubscribeHeader);
-            String unsubType = (unsubscribePost != null && unsubscribePost.contains("One-Click"))
-                    ? "one-click" : (unsubUrl != null ? "link" : "mailto");
+            MailHeaderParser.UnsubscribeTargets targets = headerParser.parseListUnsubscribe(unsubscribeHeader);
+            String unsubUrl = targets.url;
+            String unsubMailto = targets.mailto;
+            String unsubType = headerParser.unsubscribeType(unsubscribePost, unsubUrl);
 
             GmailScanService.SubscriptionData data = senderMap.computeIfAbsent(
                     senderEmail, k -> new GmailScanService.SubscriptionData());
-            data.senderEmail = senderEmail.toLowerCase();
+            data.senderEmail = senderEmail;
             data.senderName = senderName;
             data.domain = domain;
             data.unsubscribeUrl = unsubUrl;
             data.unsubscribeMailto = unsubMailto;
             data.unsubscribeType = unsubType;
-            data.emailCount++;
+            data.count(msg.receivedAt);
             if (subject != null && !subject.isEmpty()) data.subjects.add(subject);
 
         } catch (Exception e) {
             log.debug("Error processing Outlook message: {}", e.getMessage());
         }
     }
-
-    private boolean saveOrUpdateSubscription(User user, GmailScanService.SubscriptionData data, String accountType) {
-        boolean isNew = false;
-        Optional<UserSubscription> existing = subscriptionRepository
-                .findByUserIdAndSenderEmailAndAccountType(user.getId(), data.senderEmail, accountType);
-
-        UserSubscription sub;
-        if (existing.isPresent()) {
-            sub = existing.get();
-            sub.setEmailCount30days(data.emailCount);
-        } else {
-            sub = new UserSubscription();
-            sub.setUser(user);
-            sub.setSenderEmail(data.senderEmail);
-            sub.setSenderName(data.senderName);
-            sub.setAccountType(accountType);
-            sub.setTotalEmailCount(data.emailCount);
-            sub.setEmailCount30days(data.emailCount);
-            sub.setFirstEmailAt(LocalDateTime.now());
-            isNew = true;
-        }
-
-        sub.setUnsubscribeLink(data.unsubscribeUrl);
-        sub.setUnsubscribeMailto(data.unsubscribeMailto);
-        sub.setUnsubscribeType(data.unsubscribeType);
-        sub.setLastEmailAt(LocalDateTime.now());
-
-        communitySenderRepository.findByDomain(data.domain)
-                .ifPresentOrElse(
-                        sub::setCommunitySender,
-                        () -> categorizationService.addToQueue(
-                                data.domain, data.senderName, data.senderEmail,
-                                new ArrayList<>(data.subjects))
-                );
-
-        subscriptionRepository.save(sub);
-        return isNew;
-    }
-
-    private String extractUrl(String header) {
-        Matcher m = UNSUBSCRIBE_URL_PATTERN.matcher(header);
-        return m.find() ? m.group(1) : null;
-    }
-
-    private String extractMailto(String header) {
-        Matcher m = UNSUBSCRIBE_MAILTO_PATTERN.matcher(header);
-        return m.find() ? m.group(1) : null;
-    }
 }
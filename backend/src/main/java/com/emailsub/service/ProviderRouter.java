@@ -0,0 +1,200 @@
+package com.emailsub.service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Picks and calls AI providers. Every call has a timeout; a provider whose calls fail
+// failure-threshold times in a row is skipped until its circuit breaker has been open for
+// open-duration. A call still outstanding after the provider's p95 latency is hedged with the next
+// available provider, and whichever returns a valid result first wins; the other call is cancelled.
+@Slf4j
+public class ProviderRouter {
+
+    private static final int LATENCY_WINDOW = 100;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    // call takes the prompt and max output tokens and emits the model's raw reply text
+    public record Provider(String name, TokenBucket rateLimiter, BiFunction<String, Integer, Mono<String>> call) {
+    }
+
+    // value is null when no provider returned a valid result; hedge is the second provider called,
+    // if any, so the caller does not try it again for the same items
+    public record Routed<T>(Provider provider, T value, Provider hedge) {
+    }
+
+    private final List<Provider> providers;
+    private final Map<Provider, Health> health = new HashMap<>();
+    private final Duration timeout;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long minHedgeDelayMillis;
+    private final long defaultHedgeDelayMillis;
+
+    public ProviderRouter(List<Provider> providers, Duration timeout, int failureThreshold, Duration openDuration,
+                          Duration minHedgeDelay, Duration defaultHedgeDelay) {
+        this.providers = providers;
+        this.timeout = timeout;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.minHedgeDelayMillis = minHedgeDelay.toMillis();
+        this.defaultHedgeDelayMillis = defaultHedgeDelay.toMillis();
+        providers.forEach(p -> health.put(p, new Health()));
+    }
+
+    public int size() {
+        return providers.size();
+    }
+
+    // First untried provider whose circuit is closed and which has a free token, in fallback order.
+    // Waits for the soonest token when all of them are throttled; null when every untried provider
+    // has an open circuit.
+    public Provider acquire(Set<Provider> tried) throws InterruptedException {
+        while (true) {
+            long wait = Long.MAX_VALUE;
+            for (Provider provider : providers) {
+                if (tried.contains(provider) || !health.get(provider).allowsCall()) continue;
+                if (provider.rateLimiter().tryAcquire()) return provider;
+                wait = Math.min(wait, provider.rateLimiter().nanosUntilAvailable());
+            }
+            if (wait == Long.MAX_VALUE) return null;
+            TimeUnit.NANOSECONDS.sleep(Math.max(wait, 1_000_000));
+        }
+    }
+
+    public boolean allowsCall(Provider provider) {
+        return health.get(provider).allowsCall();
+    }
+
+    // 0 while any provider's circuit lets calls through, otherwise the time until the first one goes
+    // half-open
+    public long nanosUntilAnyAllowed() {
+        long wait = Long.MAX_VALUE;
+        for (Provider provider : providers) {
+            wait = Math.min(wait, health.get(provider).nanosUntilAllowed());
+        }
+        return wait;
+    }
+
+    // Calls primary, whose token the caller already holds, and hedges it once it runs past its p95
+    // latency, or straight away when it fails. Only a provider that is neither tried nor open and has
+    // a token right now is used as the hedge. Blocks until one call returns a valid result or both
+    // have failed.
+    public <T> Routed<T> call(Provider primary, Set<Provider> tried, Function<Provider, Mono<T>> request,
+                              Predicate<T> valid) {
+        Provider[] hedge = new Provider[1];
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Mono<Routed<T>> first = track(primary, request).filter(valid)
+                .map(value -> new Routed<>(primary, value, null))
+                .doOnSuccess(routed -> {
+                    if (routed == null) primaryFailed.tryEmitEmpty();
+                })
+                .doOnError(e -> primaryFailed.tryEmitEmpty());
+        Mono<Routed<T>> second = Mono.defer(() -> {
+            Provider next = hedgeFor(primary, tried);
+            if (next == null) return Mono.empty();
+            synchronized (hedge) {
+                hedge[0] = next;
+            }
+            log.info("Hedging {} with {}", primary.name(), next.name());
+            return track(next, request).filter(valid).map(value -> new Routed<>(next, value, null));
+        }).delaySubscription(Mono.firstWithSignal(Mono.delay(hedgeDelay(primary)), primaryFailed.asMono()));
+
+        Routed<T> winner;
+        try {
+            winner = Mono.firstWithValue(first, second).block();
+        } catch (NoSuchElementException e) {
+            winner = null; // both completed empty or with an error
+        }
+        Provider hedged;
+        synchronized (hedge) {
+            hedged = hedge[0];
+        }
+        return winner != null
+                ? new Routed<>(winner.provider(), winner.value(), hedged)
+                : new Routed<>(primary, null, hedged);
+    }
+
+    private Provider hedgeFor(Provider primary, Set<Provider> tried) {
+        for (Provider provider : providers) {
+            if (provider == primary || tried.contains(provider) || !health.get(provider).allowsCall()) continue;
+            if (provider.rateLimiter().tryAcquire()) return provider;
+        }
+        return null;
+    }
+
+    private Duration hedgeDelay(Provider provider) {
+        long p95 = health.get(provider).p95Millis();
+        return Duration.ofMillis(p95 < 0 ? defaultHedgeDelayMillis : Math.max(minHedgeDelayMillis, p95));
+    }
+
+    // Records latency and the breaker outcome. A cancelled call, the loser of a hedge, counts as neither.
+    private <T> Mono<T> track(Provider provider, Function<Provider, Mono<T>> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            Health h = health.get(provider);
+            return request.apply(provider)
+                    .timeout(timeout)
+                    .doOnSuccess(value -> h.onSuccess(provider, System.nanoTime() - start))
+                    .doOnError(e -> {
+                        log.warn("{} call failed: {}", provider.name(), e.getMessage());
+                        h.onFailure(provider);
+                    });
+        });
+    }
+
+    // Circuit breaker and recent latencies of one provider
+    private class Health {
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int samples;
+        private int next;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean open;
+
+        // Once the open period is over, calls go through again as half-open probes: the first success
+        // closes the circuit, a failure opens it for another period
+        synchronized boolean allowsCall() {
+            return !open || System.nanoTime() >= openUntil;
+        }
+
+        synchronized long nanosUntilAllowed() {
+            return allowsCall() ? 0 : openUntil - System.nanoTime();
+        }
+
+        synchronized void onSuccess(Provider provider, long nanos) {
+            latencies[next] = TimeUnit.NANOSECONDS.toMillis(nanos);
+            next = (next + 1) % LATENCY_WINDOW;
+            samples = Math.min(samples + 1, LATENCY_WINDOW);
+            consecutiveFailures = 0;
+            if (open) {
+                open = false;
+                log.info("Circuit for {} closed", provider.name());
+            }
+        }
+
+        synchronized void onFailure(Provider provider) {
+            consecutiveFailures++;
+            if (open || consecutiveFailures >= failureThreshold) {
+                if (!open) log.warn("Circuit for {} opened after {} failures", provider.name(), consecutiveFailures);
+                open = true;
+                openUntil = System.nanoTime() + openNanos;
+            }
+        }
+
+        // -1 until there are enough samples to tell
+        synchronized long p95Millis() {
+            if (samples < MIN_LATENCY_SAMPLES) return -1;
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(samples * 0.95) - 1];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.emailsub.service;
+
+import com.emailsub.model.ScanCheckpoint;
+import com.emailsub.model.SyncLog;
+import com.emailsub.model.User;
+import com.emailsub.repository.ScanCheckpointRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Persists the page cursor and partially aggregated sender map of a running scan, so a scan
+// that dies halfway (restart, token error, 429) resumes from its last checkpoint.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanCheckpointService {
+
+    private final ScanCheckpointRepository checkpointRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.sync.checkpoint-every-pages}")
+    private int checkpointEveryPages;
+
+    @Value("${app.sync.checkpoint-max-age-hours}")
+    private int checkpointMaxAgeHours;
+
+    @Value("${app.sync.checkpoint-lease-minutes}")
+    private int checkpointLeaseMinutes;
+
+    // Claims the account's checkpoint for a new scan run and returns it, resuming the stored
+    // progress when it is recent enough. Returns null while another scan of the same account (a
+    // scheduled and a manual one starting together) holds the row, so the two never share it.
+    public ScanCheckpoint resumeOrStart(User user, String accountType, String syncType) {
+        UUID owner = UUID.randomUUID();
+        UUID newId = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        if (checkpointRepository.claim(newId, user.getId(), accountType, syncType, now, owner,
+                now.plusMinutes(checkpointLeaseMinutes)) == 0) {
+            log.info("{} scan for user {} is already running, not starting another", accountType, user.getId());
+            return null;
+        }
+
+        ScanCheckpoint checkpoint = checkpointRepository.findByUserIdAndAccountType(user.getId(), accountType)
+                .filter(claimed -> owner.equals(claimed.getLockedBy()))
+                .orElseThrow(() -> new IllegalStateException("Scan checkpoint lost while starting the scan"));
+        checkpoint.setUser(user);
+        if (checkpoint.getId().equals(newId)) return checkpoint;
+
+        LocalDateTime expiry = checkpoint.getUpdatedAt().plusHours(checkpointMaxAgeHours);
+        if (checkpoint.getPageToken() != null && now.isBefore(expiry)) {
+            log.info("Resuming {} scan for user {} after {} pages",
+                    accountType, user.getId(), checkpoint.getPagesProcessed());
+            return checkpoint;
+        }
+
+        // Too old or never got past its first page: start over on the same row
+        checkpoint.setSyncType(syncType);
+        checkpoint.setPageToken(null);
+        checkpoint.setStartHistoryId(null);
+        checkpoint.setHistoryId(null);
+        checkpoint.setSenderMap(null);
+        checkpoint.setEmailsScanned(0);
+        checkpoint.setPagesProcessed(0);
+        return checkpoint;
+    }
+
+    public Map<String, GmailScanService.SubscriptionData> restoreSenders(ScanCheckpoint checkpoint) {
+        if (checkpoint.getSenderMap() == null) return new HashMap<>();
+        try {
+            return objectMapper.readValue(checkpoint.getSenderMap(),
+                    new TypeReference<HashMap<String, GmailScanService.SubscriptionData>>() {});
+        } catch (Exception e) {
+            throw new RuntimeException("Corrupt scan checkpoint " + checkpoint.getId(), e);
+        }
+    }
+
+    // True when enough pages have been processed since the last flush
+    public boolean isDue(ScanCheckpoint checkpoint) {
+        return checkpoint.getPageToken() != null
+                && checkpoint.getPagesProcessed() % checkpointEveryPages == 0;
+    }
+
+    public void save(ScanCheckpoint checkpoint, Map<String, GmailScanService.SubscriptionData> senderMap,
+                     SyncLog syncLog) {
+        try {
+            checkpoint.setSenderMap(objectMapper.writeValueAsString(senderMap));
+        } catch (Exception e) {
+            throw new RuntimeException("Could not serialize scan checkpoint", e);
+        }
+        checkpoint.setSyncLog(syncLog);
+        if (checkpointRepository.renewLease(checkpoint.getId(), checkpoint.getLockedBy(),
+                LocalDateTime.now().plusMinutes(checkpointLeaseMinutes)) == 0) {
+            throw new IllegalStateException("Scan checkpoint " + checkpoint.getId() + " was taken over by another scan");
+        }
+        checkpointRepository.save(checkpoint);
+        log.debug("Checkpointed {} scan for user {} at page {}",
+                checkpoint.getAccountType(), checkpoint.getUser().getId(), checkpoint.getPagesProcessed());
+    }
+
+    public void clear(ScanCheckpoint checkpoint) {
+        checkpointRepository.discard(checkpoint.getId(), checkpoint.getLockedBy());
+    }
+
+    // For a failed scan: the saved progress stays for the next scan to resume
+    public void release(ScanCheckpoint checkpoint) {
+        checkpointRepository.release(checkpoint.getId(), checkpoint.getLockedBy());
+    }
+}
@@ -0,0 +1,26 @@
+package com.emailsub.service;
+
+import java.time.Instant;
+
+// Header fields of one scanned message, as pulled out of a Gmail or Graph response
+class ScannedMessage {
+    String from;          // raw From header (Gmail)
+    String senderName;    // sender.emailAddress.name (Graph)
+    String senderAddress; // sender.emailAddress.address (Graph)
+    String subject;
+    String date;
+    String listUnsubscribe;
+    String listUnsubscribePost;
+    Instant receivedAt;   // internalDate (Gmail), receivedDateTime (Graph)
+
+    void setHeader(String name, String value) {
+        if (name == null) return;
+        switch (name.toLowerCase()) {
+            case "from" -> from = value;
+            case "subject" -> subject = value;
+            case "date" -> date = value;
+            case "list-unsubscribe" -> listUnsubscribe = value;
+            case "list-unsubscribe-post" -> listUnsubscribePost = value;
+        }
+    }
+}
@@ -6,9 +6,12 @@ import com.emailsub.model.UserSubscription;
 import com.emailsub.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -18,52 +21,50 @@ import java.util.stream.Collectors;
 public class SubscriptionService {
 
     private final UserSubscriptionRepository subscriptionRepository;
-    private final CommunitySenderRepository communitySenderRepository;
     private final UserCorrectionRepository correctionRepository;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final CorrectionConsensusService consensusService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public Map<String, Object> getDashboard(UUID userId) {
-        List<UserSubscription> subs = subscriptionRepository.findByUserIdWithSender(userId);
-
-        Map<String, List<Map<String, Object>>> byCategory = new LinkedHashMap<>();
-        long activeCount = 0;
-        long unsubscribedCount = 0;
-
-        // Define category order
-        List<String> categoryOrder = List.of(
-                "Jobs", "Finance", "Shopping", "Learning", "News",
-                "Social", "Travel", "Health", "Entertainment", "Other"
-        );
-        categoryOrder.forEach(c -> byCategory.put(c, new ArrayList<>()));
+    @Value("${app.subscriptions.default-page-size}")
+    private int defaultPageSize;
 
-        for (UserSubscription sub : subs) {
-            String category = sub.getEffectiveCategory();
-            if (!byCategory.containsKey(category)) byCategory.put(category, new ArrayList<>());
+    @Value("${app.subscriptions.max-page-size}")
+    private int maxPageSize;
 
-            byCategory.get(category).add(toMap(sub));
+    public Map<String, Object> getDashboard(UUID userId) {
+        return dashboardSummaryService.getDashboard(userId);
+    }
 
-            if ("active".equals(sub.getStatus())) activeCount++;
-            else if ("unsubscribed".equals(sub.getStatus())) unsubscribedCount++;
+    // One keyset page of the user's subscriptions, optionally narrowed to a category, status or
+    // account; pass the returned nextCursor back to get the following page
+    public Map<String, Object> getSubscriptionsPage(UUID userId, String category, String status,
+                                                    String accountType, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        Integer afterCount = null;
+        UUID afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] key = decodeCursor(cursor);
+            afterCount = Integer.valueOf(key[0]);
+            afterId = UUID.fromString(key[1]);
         }
 
-        // Remove empty categories
-        byCategory.entrySet().removeIf(e -> e.getValue().isEmpty());
-
-        return Map.of(
-                "categories", byCategory,
-                "totalActive", activeCount,
-                "totalUnsubscribed", unsubscribedCount,
-                "totalSenders", subs.size()
-        );
-    }
-
-    public Map<String, Object> getSubscriptionsByCategory(UUID userId, String category) {
-        List<UserSubscription> subs = subscriptionRepository.findByUserIdAndCategory(userId, category);
-        return Map.of(
-                "category", category,
-                "subscriptions", subs.stream().map(this::toMap).collect(Collectors.toList())
-        );
+        // One extra row tells us whether there is a next page
+        List<SubscriptionView> subs = subscriptionRepository.findPage(
+                userId, category, status, accountType, afterCount, afterId, pageSize + 1);
+        boolean hasMore = subs.size() > pageSize;
+        if (hasMore) subs = subs.subList(0, pageSize);
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        if (category != null) page.put("category", category);
+        page.put("subscriptions", subs.stream().map(SubscriptionView::toMap).collect(Collectors.toList()));
+        SubscriptionView last = hasMore ? subs.get(subs.size() - 1) : null;
+        page.put("nextCursor", last != null ? encodeCursor(last.emailCount30days(), last.id()) : null);
+        return page;
     }
 
+    // The subscription, the correction and the vote commit together
+    @Transactional
     public Map<String, Object> correctCategory(UUID userId, UUID subscriptionId, String newCategory) {
         UserSubscription sub = subscriptionRepository.findById(subscriptionId)
                 .orElseThrow(() -> new RuntimeException("Subscription not found"));
@@ -72,6 +73,7 @@ public class SubscriptionService {
 
         String oldCategory = sub.getEffectiveCategory();
         sub.setCustomCategory(newCategory);
+        sub.setEffectiveCategory(newCategory);
         subscriptionRepository.save(sub);
 
         // Save correction to community DB
@@ -86,51 +88,30 @@ public class SubscriptionService {
                     .build();
             correctionRepository.save(correction);
 
-            // If 10+ corrections all agree → update community DB
-            long totalCorrections = correctionRepository.countByCommunitySenderId(sender.getId());
-            if (totalCorrections >= 10) {
-                List<Object[]> topCorrection = correctionRepository.findTopCorrectionForSender(sender.getId());
-                if (!topCorrection.isEmpty()) {
-                    String topCategory = (String) topCorrection.get(0)[0];
-                    long topCount = (Long) topCorrection.get(0)[1];
-                    double agreement = (double) topCount / totalCorrections;
-
-                    if (agreement >= 0.7) {
-                        sender.setCategory(topCategory);
-                        sender.setCorrectionCount((int) totalCorrections);
-                        sender.setConfidenceScore(BigDecimal.valueOf(agreement * 100));
-                        communitySenderRepository.save(sender);
-                        log.info("Community DB updated: {} -> {}", sender.getDomain(), topCategory);
-                    }
-                }
-            }
+            // If 10+ corrections agree → update community DB, checked in the background once
+            // this vote is committed
+            consensusService.recordVote(sender.getId(), newCategory);
+            eventPublisher.publishEvent(new CategoryCorrectedEvent(sender.getId(), newCategory));
         }
 
+        dashboardSummaryService.onCategoryChanged(sub, oldCategory);
         return Map.of("success", true, "newCategory", newCategory);
     }
 
-    private Map<String, Object> toMap(UserSubscription sub) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", sub.getId());
-        map.put("senderEmail", sub.getSenderEmail());
-        map.put("senderName", sub.getSenderName());
-        map.put("emailCount30days", sub.getEmailCount30days());
-        map.put("totalEmailCount", sub.getTotalEmailCount());
-        map.put("status", sub.getStatus());
-        map.put("accountType", sub.getAccountType());
-        map.put("category", sub.getEffectiveCategory());
-        map.put("unsubscribeType", sub.getUnsubscribeType());
-        map.put("hasUnsubscribeLink", sub.getUnsubscribeLink() != null || sub.getUnsubscribeMailto() != null);
-        map.put("lastEmailAt", sub.getLastEmailAt());
-        map.put("unsubscribedAt", sub.getUnsubscribedAt());
-
-        String frequency;
-        int count = sub.getEmailCount30days();
-        if (count > 20) frequency = "20+ emails recently";
-        else if (count >= 10) frequency = "10-20 emails recently";
-        else frequency = "10 or fewer emails recently";
-        map.put("frequency", frequency);
-
-        return map;
+    // Opaque cursor over the (emailCount30days, id) sort key
+    static String encodeCursor(int emailCount30days, UUID id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((emailCount30days + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+            Integer.parseInt(key[0]);
+            UUID.fromString(key[1]);
+            return key;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
     }
 }
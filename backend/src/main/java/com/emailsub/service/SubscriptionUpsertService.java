@@ -0,0 +1,224 @@
+package com.emailsub.service;
+
+import com.emailsub.model.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Writes the sender map of a finished scan in multi-row INSERT ... ON CONFLICT statements on the
+// (user_id, sender_email, account_type) unique key, instead of a select + save per sender.
+// email_count_30days is always recounted from subscription_daily_counts, which scans write per day
+// and rollRecentCounts prunes, so it stays a 30-day count while delta syncs only add to it.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SubscriptionUpsertService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CommunitySenderCache communitySenderCache;
+    private final AiCategorizationService categorizationService;
+    private final DashboardSummaryService dashboardSummaryService;
+
+    @Value("${app.sync.upsert-batch-size}")
+    private int upsertBatchSize;
+
+    private static final String INSERT_COLUMNS =
+            "INSERT INTO user_subscriptions (id, user_id, sender_email, sender_name, sender_domain, account_type, " +
+            "total_email_count, email_count_7days, email_count_30days, first_email_at, last_email_at, " +
+            "unsubscribe_link, unsubscribe_mailto, unsubscribe_type, status, community_sender_id, " +
+            "effective_category, created_at, updated_at) VALUES ";
+    // effective_category is read from community_senders in the same statement rather than taken from
+    // the cache, so a cached category that is already out of date is never written into the row
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, 0, 0, ?, ?, ?, ?, ?, 'active', ?, " +
+            "COALESCE((SELECT cs.category FROM community_senders cs WHERE cs.id = CAST(? AS uuid)), 'Other'), ?, ?)";
+    private static final String ON_CONFLICT =
+            " ON CONFLICT (user_id, sender_email, account_type) DO UPDATE SET " +
+            "total_email_count = %s, " +
+            "unsubscribe_link = EXCLUDED.unsubscribe_link, " +
+            "unsubscribe_mailto = EXCLUDED.unsubscribe_mailto, " +
+            "unsubscribe_type = EXCLUDED.unsubscribe_type, " +
+            "first_email_at = %s, " +
+            "last_email_at = %s, " +
+            "sender_domain = EXCLUDED.sender_domain, " +
+            "community_sender_id = COALESCE(EXCLUDED.community_sender_id, user_subscriptions.community_sender_id), " +
+            // A custom category still wins; otherwise follow the community sender when we have one
+            "effective_category = CASE " +
+            "WHEN NULLIF(user_subscriptions.custom_category, '') IS NOT NULL THEN user_subscriptions.custom_category " +
+            "WHEN EXCLUDED.community_sender_id IS NOT NULL THEN EXCLUDED.effective_category " +
+            "ELSE user_subscriptions.effective_category END, " +
+            "updated_at = EXCLUDED.updated_at " +
+            "RETURNING id, sender_email, (xmax = 0) AS inserted";
+
+    static final int RECENT_DAYS = 30;
+    private static final int DAILY_ROWS_PER_STATEMENT = 1000;
+
+    private static final String DAILY_INSERT =
+            "INSERT INTO subscription_daily_counts (subscription_id, day, email_count) VALUES %s " +
+            "ON CONFLICT (subscription_id, day) " +
+            "DO UPDATE SET email_count = subscription_daily_counts.email_count + EXCLUDED.email_count";
+    private static final String RECOUNT_SQL =
+            "UPDATE user_subscriptions us SET email_count_30days = COALESCE((SELECT SUM(d.email_count) " +
+            "FROM subscription_daily_counts d WHERE d.subscription_id = us.id AND d.day > ?), 0) " +
+            "WHERE us.id IN (%s)";
+    // Days leaving the window are deleted and the subscriptions that had them recounted; their users'
+    // dashboards are marked stale, since the counts and the top senders order by email_count_30days
+    private static final String ROLL_SQL =
+            "WITH expired AS (DELETE FROM subscription_daily_counts WHERE day <= ? RETURNING subscription_id), " +
+            "recounted AS (UPDATE user_subscriptions us SET email_count_30days = COALESCE((SELECT SUM(d.email_count) " +
+            "FROM subscription_daily_counts d WHERE d.subscription_id = us.id AND d.day > ?), 0) " +
+            "WHERE us.id IN (SELECT subscription_id FROM expired) RETURNING us.user_id) " +
+            "UPDATE dashboard_summaries SET stale = true WHERE user_id IN (SELECT user_id FROM recounted)";
+
+    private record Upserted(UUID id, String senderEmail, boolean inserted) {
+    }
+
+    // Days after this one (UTC) are inside the recent-count window
+    static LocalDate recentCutoff() {
+        return LocalDate.now(ZoneOffset.UTC).minusDays(RECENT_DAYS);
+    }
+
+    // Returns the number of senders that were new for this user and account. delta is true when
+    // the scan only read the messages added since the previous sync.
+    public int upsertAll(User user, Collection<GmailScanService.SubscriptionData> senders, String accountType,
+                         boolean delta) {
+        if (senders.isEmpty()) return 0;
+
+        String onConflict = onConflict(accountType, delta);
+
+        List<GmailScanService.SubscriptionData> rows = new ArrayList<>(senders);
+        Map<String, CommunitySenderCache.CachedSender> communitySenders = resolveCommunitySenders(user, rows);
+
+        int newSenders = 0;
+        for (int from = 0; from < rows.size(); from += upsertBatchSize) {
+            List<GmailScanService.SubscriptionData> chunk = rows.subList(from, Math.min(from + upsertBatchSize, rows.size()));
+            newSenders += upsertChunk(user, chunk, accountType, delta, onConflict, communitySenders);
+        }
+
+        log.info("Upserted {} {} subscriptions for user {} ({} new)", rows.size(), accountType, user.getId(), newSenders);
+        dashboardSummaryService.rebuild(user.getId());
+        return newSenders;
+    }
+
+    // A delta scan's counts only cover the new messages, so they are added to the stored ones and
+    // the timestamps only ever widen; a full scan replaces them. Gmail full scans add to the
+    // running total and Outlook full scans only set it on insert, as before.
+    private String onConflict(String accountType, boolean delta) {
+        String total = delta || "gmail".equals(accountType)
+                ? "user_subscriptions.total_email_count + EXCLUDED.total_email_count"
+                : "user_subscriptions.total_email_count";
+        if (delta) {
+            return String.format(ON_CONFLICT, total,
+                    "LEAST(user_subscriptions.first_email_at, EXCLUDED.first_email_at)",
+                    "GREATEST(user_subscriptions.last_email_at, EXCLUDED.last_email_at)");
+        }
+        return String.format(ON_CONFLICT, total, "user_subscriptions.first_email_at", "EXCLUDED.last_email_at");
+    }
+
+    private int upsertChunk(User user, List<GmailScanService.SubscriptionData> chunk,
+                            String accountType, boolean delta, String onConflict,
+                            Map<String, CommunitySenderCache.CachedSender> communitySenders) {
+        StringJoiner values = new StringJoiner(", ");
+        List<Object> args = new ArrayList<>(chunk.size() * 16);
+        LocalDateTime now = LocalDateTime.now();
+
+        for (GmailScanService.SubscriptionData data : chunk) {
+            values.add(ROW_PLACEHOLDERS);
+            args.add(UUID.randomUUID());
+            args.add(user.getId());
+            args.add(data.senderEmail);
+            args.add(data.senderName);
+            args.add(data.domain);
+            args.add(accountType);
+            args.add(data.emailCount);
+            args.add(now);
+            args.add(now);
+            args.add(data.unsubscribeUrl);
+            args.add(data.unsubscribeMailto);
+            args.add(data.unsubscribeType);
+            CommunitySenderCache.CachedSender sender = communitySenders.get(data.domain);
+            args.add(sender != null ? sender.getId() : null);
+            args.add(sender != null ? sender.getId() : null);
+            args.add(now);
+            args.add(now);
+        }
+
+        List<Upserted> upserted = jdbcTemplate.query(INSERT_COLUMNS + values + onConflict,
+                (rs, rowNum) -> new Upserted(rs.getObject("id", UUID.class), rs.getString("sender_email"),
+                        rs.getBoolean("inserted")),
+                args.toArray());
+        writeRecentCounts(chunk, upserted, delta);
+        return (int) upserted.stream().filter(Upserted::inserted).count();
+    }
+
+    // A full scan replaces the subscriptions' days, a delta scan adds its messages to them; either
+    // way email_count_30days is then recounted over the window
+    private void writeRecentCounts(List<GmailScanService.SubscriptionData> chunk, List<Upserted> upserted,
+                                   boolean delta) {
+        if (upserted.isEmpty()) return;
+        Map<String, UUID> ids = new HashMap<>();
+        for (Upserted row : upserted) ids.put(row.senderEmail(), row.id());
+        String idPlaceholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        LocalDate cutoff = recentCutoff();
+
+        if (!delta) {
+            jdbcTemplate.update("DELETE FROM subscription_daily_counts WHERE subscription_id IN (" +
+                    idPlaceholders + ")", ids.values().toArray());
+        }
+
+        List<Object[]> days = new ArrayList<>();
+        for (GmailScanService.SubscriptionData data : chunk) {
+            UUID id = ids.get(data.senderEmail);
+            if (id == null) continue;
+            data.recentDays.forEach((day, count) -> {
+                LocalDate date = LocalDate.parse(day);
+                if (date.isAfter(cutoff)) days.add(new Object[]{id, date, count});
+            });
+        }
+        for (int from = 0; from < days.size(); from += DAILY_ROWS_PER_STATEMENT) {
+            List<Object[]> rows = days.subList(from, Math.min(from + DAILY_ROWS_PER_STATEMENT, days.size()));
+            List<Object> args = new ArrayList<>(rows.size() * 3);
+            rows.forEach(row -> args.addAll(Arrays.asList(row)));
+            String values = String.join(", ", Collections.nCopies(rows.size(), "(?, ?, ?)"));
+            jdbcTemplate.update(String.format(DAILY_INSERT, values), args.toArray());
+        }
+
+        List<Object> recountArgs = new ArrayList<>(ids.size() + 1);
+        recountArgs.add(cutoff);
+        recountArgs.addAll(ids.values());
+        jdbcTemplate.update(String.format(RECOUNT_SQL, idPlaceholders), recountArgs.toArray());
+    }
+
+    @Scheduled(cron = "${app.subscriptions.recent-counts-cron}", zone = "UTC")
+    public void rollRecentCounts() {
+        LocalDate cutoff = recentCutoff();
+        int stale = jdbcTemplate.update(ROLL_SQL, cutoff, cutoff);
+        log.info("Rolled 30-day counts forward to {}, {} dashboard summaries marked stale", cutoff.plusDays(1), stale);
+    }
+
+    // Looks up every distinct domain of the scan at once and queues the unknown ones for AI
+    // categorization; returns domain -> community sender for the known ones
+    private Map<String, CommunitySenderCache.CachedSender> resolveCommunitySenders(User user,
+                                                                                   List<GmailScanService.SubscriptionData> rows) {
+        Map<String, GmailScanService.SubscriptionData> byDomain = new LinkedHashMap<>();
+        for (GmailScanService.SubscriptionData data : rows) {
+            if (data.domain != null) byDomain.putIfAbsent(data.domain, data);
+        }
+
+        Map<String, CommunitySenderCache.CachedSender> known = communitySenderCache.getAll(byDomain.keySet());
+
+        List<GmailScanService.SubscriptionData> unknown = new ArrayList<>();
+        byDomain.forEach((domain, data) -> {
+            if (!known.containsKey(domain)) unknown.add(data);
+        });
+        categorizationService.addAllToQueue(user.getId(), unknown);
+        return known;
+    }
+}
@@ -0,0 +1,38 @@
+package com.emailsub.service;
+
+// Token bucket refilled continuously at a per-minute rate. Holds at most ten seconds' worth of
+// tokens (at least one), so a provider's quota is spread out rather than spent in one burst.
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(int requestsPerMinute) {
+        if (requestsPerMinute < 1) throw new IllegalArgumentException("requestsPerMinute must be at least 1");
+        this.capacity = Math.max(1, requestsPerMinute / 6);
+        this.tokensPerNano = requestsPerMinute / 60_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    // Time until the next token is available, 0 if one is available now
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
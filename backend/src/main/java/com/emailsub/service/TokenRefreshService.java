@@ -1,5 +1,6 @@
 package com.emailsub.service;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.User;
 import com.emailsub.repository.UserRepository;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -8,7 +9,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -20,6 +20,7 @@ public class TokenRefreshService {
 
     private final UserRepository userRepository;
     private final ObjectMapper objectMapper;
+    private final HttpClientFactory httpClients;
 
     @Value("${spring.security.oauth2.client.registration.google.client-id}")
     private String googleClientId;
@@ -51,8 +52,7 @@ public class TokenRefreshService {
 
     private String refreshGmailToken(User user) {
         try {
-            WebClient client = WebClient.create("https://oauth2.googleapis.com");
-            String response = client.post()
+            String response = httpClients.client("https://oauth2.googleapis.com").post()
                     .uri("/token")
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .bodyValue("grant_type=refresh_token" +
@@ -81,8 +81,7 @@ public class TokenRefreshService {
 
     private String refreshOutlookToken(User user) {
         try {
-            WebClient client = WebClient.create("https://login.microsoftonline.com");
-            String response = client.post()
+            String response = httpClients.client("https://login.microsoftonline.com").post()
                     .uri("/common/oauth2/v2.0/token")
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .bodyValue("grant_type=refresh_token" +
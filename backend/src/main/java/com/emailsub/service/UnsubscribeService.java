@@ -1,5 +1,6 @@
 package com.emailsub.service;
 
+import com.emailsub.config.HttpClientFactory;
 import com.emailsub.model.User;
 import com.emailsub.model.UserSubscription;
 import com.emailsub.repository.UserRepository;
@@ -7,7 +8,6 @@ import com.emailsub.repository.UserSubscriptionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -21,6 +21,11 @@ public class UnsubscribeService {
     private final UserSubscriptionRepository subscriptionRepository;
     private final UserRepository userRepository;
     private final TokenRefreshService tokenRefreshService;
+    private final DashboardSummaryService dashboardSummaryService;
+    private final HttpClientFactory httpClients;
+
+    private static final String GMAIL_API = "https://gmail.googleapis.com/gmail/v1";
+    private static final String GRAPH_API = "https://graph.microsoft.com/v1.0";
 
     public Map<String, Object> unsubscribe(UUID userId, UUID subscriptionId) {
         UserSubscription sub = subscriptionRepository.findById(subscriptionId)
@@ -33,6 +38,7 @@ public class UnsubscribeService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
+        String oldStatus = sub.getStatus();
         String result;
         String method;
 
@@ -47,6 +53,7 @@ public class UnsubscribeService {
                 // Return link for manual handling
                 sub.setStatus("pending");
                 subscriptionRepository.save(sub);
+                dashboardSummaryService.onStatusChanged(sub, oldStatus);
                 return Map.of(
                         "success", true,
                         "method", "manual",
@@ -60,6 +67,7 @@ public class UnsubscribeService {
             sub.setStatus("unsubscribed");
             sub.setUnsubscribedAt(LocalDateTime.now());
             subscriptionRepository.save(sub);
+            dashboardSummaryService.onStatusChanged(sub, oldStatus);
 
             return Map.of("success", true, "method", method, "message", result);
 
@@ -71,8 +79,7 @@ public class UnsubscribeService {
 
     private String handleOneClick(String url) {
         try {
-            WebClient client = WebClient.create();
-            client.post()
+            httpClients.external().post()
                     .uri(url)
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .bodyValue("List-Unsubscribe=One-Click")
@@ -111,13 +118,9 @@ public class UnsubscribeService {
         String encoded = java.util.Base64.getUrlEncoder()
                 .encodeToString(rawEmail.getBytes());
 
-        WebClient client = WebClient.builder()
-                .baseUrl("https://gmail.googleapis.com/gmail/v1")
-                .defaultHeader("Authorization", "Bearer " + accessToken)
-                .build();
-
-        client.post()
+        httpClients.client(GMAIL_API).post()
                 .uri("/users/me/messages/send")
+                .header("Authorization", "Bearer " + accessToken)
                 .header("Content-Type", "application/json")
                 .bodyValue(Map.of("raw", encoded))
                 .retrieve()
@@ -134,13 +137,9 @@ public class UnsubscribeService {
                 )
         );
 
-        WebClient client = WebClient.builder()
-                .baseUrl("https://graph.microsoft.com/v1.0")
-                .defaultHeader("Authorization", "Bearer " + accessToken)
-                .build();
-
-        client.post()
+        httpClients.client(GRAPH_API).post()
                 .uri("/me/sendMail")
+                .header("Authorization", "Bearer " + accessToken)
                 .header("Content-Type", "application/json")
                 .bodyValue(Map.of("message", message))
                 .retrieve()
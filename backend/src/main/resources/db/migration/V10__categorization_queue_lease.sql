@@ -0,0 +1,3 @@
+-- A claimed item is only 'processing' until its lease expires; after that another worker or
+-- node may take it again (the owner crashed or was stopped mid-call)
+ALTER TABLE categorization_queue ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP(6);
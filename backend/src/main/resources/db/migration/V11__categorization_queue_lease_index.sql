@@ -0,0 +1,18 @@
+-- releaseExpiredLeases, failExpiredLeases: status = 'processing' AND lease_expires_at < now().
+-- Built CONCURRENTLY, see the .conf file.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text = 'idx_categorization_queue_processing_lease'
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_categorization_queue_processing_lease
+    ON categorization_queue (lease_expires_at)
+    WHERE status = 'processing';
@@ -0,0 +1,22 @@
+-- Demand-weighted queue: demand is the number of distinct users waiting on a queued domain, and
+-- pending items are claimed most-demanded first. categorization_queue_waiters records who is
+-- waiting, so a user scanning the same sender again does not count twice.
+ALTER TABLE categorization_queue ADD COLUMN IF NOT EXISTS demand INTEGER NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS categorization_queue_waiters (
+    queue_id UUID NOT NULL REFERENCES categorization_queue (id) ON DELETE CASCADE,
+    user_id  UUID NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    PRIMARY KEY (queue_id, user_id)
+);
+
+-- Items already queued: everyone with an unlinked subscription on the domain is waiting on it
+INSERT INTO categorization_queue_waiters (queue_id, user_id)
+SELECT DISTINCT q.id, us.user_id
+FROM categorization_queue q
+JOIN user_subscriptions us ON us.sender_domain = q.domain AND us.community_sender_id IS NULL
+WHERE q.status IN ('pending', 'processing')
+ON CONFLICT DO NOTHING;
+
+UPDATE categorization_queue q SET demand = w.waiters
+FROM (SELECT queue_id, COUNT(*) AS waiters FROM categorization_queue_waiters GROUP BY queue_id) w
+WHERE q.id = w.queue_id;
@@ -0,0 +1,20 @@
+-- claimPendingItems: status = 'pending' ORDER BY priority, demand DESC, created_at.
+-- Replaces the (priority, created_at) index from V3. Built CONCURRENTLY, see the .conf file.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text = 'idx_categorization_queue_pending_demand'
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_categorization_queue_pending_demand
+    ON categorization_queue (priority, demand DESC, created_at)
+    WHERE status = 'pending';
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_categorization_queue_pending;
@@ -0,0 +1,14 @@
+-- Wakes the categorization workers as soon as domains are queued, instead of waiting for the next
+-- poll. One notification per statement; Postgres also folds identical notifications raised in the
+-- same transaction into one, so a batched enqueue wakes each listener once.
+CREATE OR REPLACE FUNCTION notify_categorization_queue() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('categorization_queue', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS categorization_queue_notify ON categorization_queue;
+CREATE TRIGGER categorization_queue_notify
+    AFTER INSERT ON categorization_queue
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_categorization_queue();
@@ -0,0 +1,16 @@
+-- Per-sender correction tallies, so community consensus reads one row per category instead of
+-- aggregating every correction ever made for the sender. Kept in step with user_corrections by an
+-- upsert for each new correction.
+CREATE TABLE IF NOT EXISTS sender_category_votes (
+    community_sender_id UUID NOT NULL REFERENCES community_senders (id) ON DELETE CASCADE,
+    category            VARCHAR(255) NOT NULL,
+    votes               INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (community_sender_id, category)
+);
+
+INSERT INTO sender_category_votes (community_sender_id, category, votes)
+SELECT community_sender_id, corrected_category, COUNT(*)
+FROM user_corrections
+WHERE community_sender_id IS NOT NULL AND corrected_category IS NOT NULL
+GROUP BY community_sender_id, corrected_category
+ON CONFLICT (community_sender_id, category) DO UPDATE SET votes = EXCLUDED.votes;
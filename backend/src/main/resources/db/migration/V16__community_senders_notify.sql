@@ -0,0 +1,23 @@
+-- Tells every backend node which community sender changed, so each can drop its cached entry
+-- instead of serving the old category until the TTL runs out. Notifications are only delivered
+-- once the writing transaction commits, so a node cannot reload the old row after evicting it.
+-- Payload is the domain, the cache key.
+CREATE OR REPLACE FUNCTION notify_community_sender_changed() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND NEW.domain = OLD.domain AND NEW.category = OLD.category THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM pg_notify('community_senders', OLD.domain);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM pg_notify('community_senders', NEW.domain);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS community_senders_notify ON community_senders;
+CREATE TRIGGER community_senders_notify
+    AFTER INSERT OR DELETE OR UPDATE OF domain, category ON community_senders
+    FOR EACH ROW EXECUTE FUNCTION notify_community_sender_changed();
@@ -0,0 +1,26 @@
+-- Merges open (pending or processing) items that share a domain, left by the old check-then-insert
+-- enqueue, so V19 can make the domain unique among open items. Runs in one transaction: a
+-- processing item is kept over a pending one, then the most demanded, then the oldest, and the
+-- others' waiters move onto it.
+CREATE TEMPORARY TABLE open_duplicates ON COMMIT DROP AS
+SELECT q.id, k.keep_id
+FROM categorization_queue q
+JOIN (SELECT domain,
+             (array_agg(id ORDER BY status = 'processing' DESC, demand DESC, created_at))[1] AS keep_id
+      FROM categorization_queue
+      WHERE status IN ('pending', 'processing')
+      GROUP BY domain
+      HAVING COUNT(*) > 1) k ON k.domain = q.domain
+WHERE q.status IN ('pending', 'processing') AND q.id <> k.keep_id;
+
+INSERT INTO categorization_queue_waiters (queue_id, user_id)
+SELECT d.keep_id, w.user_id
+FROM categorization_queue_waiters w
+JOIN open_duplicates d ON d.id = w.queue_id
+ON CONFLICT DO NOTHING;
+
+DELETE FROM categorization_queue WHERE id IN (SELECT id FROM open_duplicates);
+
+UPDATE categorization_queue q
+SET demand = (SELECT COUNT(*) FROM categorization_queue_waiters w WHERE w.queue_id = q.id)
+WHERE q.id IN (SELECT keep_id FROM open_duplicates);
@@ -0,0 +1,20 @@
+-- At most one open (pending or processing) item per domain, so enqueueing is a single
+-- INSERT ... ON CONFLICT instead of a lookup followed by an insert that two scans can race.
+-- V18 merged the existing duplicates. Built CONCURRENTLY, see the .conf file.
+--
+-- If a node still running the old enqueue inserts a duplicate after V18, the build fails and
+-- leaves an INVALID index, which ON CONFLICT cannot use. Such a leftover is dropped first and the
+-- index is created without IF NOT EXISTS, so a failed build stops the migration instead of being
+-- taken as done on the next run.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_index i
+               WHERE NOT i.indisvalid
+                 AND i.indexrelid::regclass::text = 'uk_categorization_queue_open_domain') THEN
+        DROP INDEX uk_categorization_queue_open_domain;
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX CONCURRENTLY uk_categorization_queue_open_domain
+    ON categorization_queue (domain)
+    WHERE status IN ('pending', 'processing');
@@ -0,0 +1,104 @@
+-- Schema as previously generated by Hibernate (ddl-auto=update). Databases created that way are
+-- baselined at version 1 and skip this script; new databases are created from it.
+
+CREATE TABLE IF NOT EXISTS users (
+    id                    UUID PRIMARY KEY,
+    email                 VARCHAR(255) NOT NULL UNIQUE,
+    name                  VARCHAR(255),
+    avatar_url            VARCHAR(255),
+    gmail_connected       BOOLEAN NOT NULL DEFAULT FALSE,
+    gmail_access_token    TEXT,
+    gmail_refresh_token   TEXT,
+    gmail_token_expiry    TIMESTAMP(6),
+    gmail_sync_token      TEXT,
+    gmail_last_sync       TIMESTAMP(6),
+    outlook_connected     BOOLEAN NOT NULL DEFAULT FALSE,
+    outlook_access_token  TEXT,
+    outlook_refresh_token TEXT,
+    outlook_token_expiry  TIMESTAMP(6),
+    outlook_delta_token   TEXT,
+    outlook_last_sync     TIMESTAMP(6),
+    created_at            TIMESTAMP(6),
+    updated_at            TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS community_senders (
+    id               UUID PRIMARY KEY,
+    domain           VARCHAR(255) NOT NULL UNIQUE,
+    sender_name      VARCHAR(255) NOT NULL,
+    category         VARCHAR(255) NOT NULL,
+    confidence_score NUMERIC(5, 2),
+    verified_count   INTEGER NOT NULL DEFAULT 0,
+    correction_count INTEGER NOT NULL DEFAULT 0,
+    categorized_by   VARCHAR(255),
+    sample_subjects  TEXT[],
+    is_trusted       BOOLEAN NOT NULL DEFAULT FALSE,
+    is_spam          BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at       TIMESTAMP(6),
+    updated_at       TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS user_subscriptions (
+    id                  UUID PRIMARY KEY,
+    user_id             UUID NOT NULL REFERENCES users (id),
+    community_sender_id UUID REFERENCES community_senders (id),
+    sender_email        VARCHAR(255) NOT NULL,
+    sender_name         VARCHAR(255),
+    total_email_count   INTEGER NOT NULL DEFAULT 0,
+    email_count_7days   INTEGER NOT NULL DEFAULT 0,
+    email_count_30days  INTEGER NOT NULL DEFAULT 0,
+    last_email_at       TIMESTAMP(6),
+    first_email_at      TIMESTAMP(6),
+    unsubscribe_link    TEXT,
+    unsubscribe_mailto  VARCHAR(255),
+    unsubscribe_type    VARCHAR(255),
+    status              VARCHAR(255),
+    unsubscribed_at     TIMESTAMP(6),
+    account_type        VARCHAR(255) NOT NULL,
+    custom_category     VARCHAR(255),
+    created_at          TIMESTAMP(6),
+    updated_at          TIMESTAMP(6),
+    CONSTRAINT uk_user_subscriptions_user_sender_account UNIQUE (user_id, sender_email, account_type)
+);
+
+CREATE TABLE IF NOT EXISTS user_corrections (
+    id                  UUID PRIMARY KEY,
+    user_id             UUID NOT NULL REFERENCES users (id),
+    community_sender_id UUID REFERENCES community_senders (id),
+    original_category   VARCHAR(255),
+    corrected_category  VARCHAR(255),
+    created_at          TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS categorization_queue (
+    id                UUID PRIMARY KEY,
+    domain            VARCHAR(255) NOT NULL,
+    sender_name       VARCHAR(255),
+    sample_subjects   TEXT,
+    sender_email      VARCHAR(255),
+    status            VARCHAR(255),
+    priority          INTEGER NOT NULL DEFAULT 5,
+    attempts          INTEGER NOT NULL DEFAULT 0,
+    max_attempts      INTEGER NOT NULL DEFAULT 3,
+    ai_provider       VARCHAR(255),
+    ai_response       TEXT,
+    assigned_category VARCHAR(255),
+    error_message     TEXT,
+    created_at        TIMESTAMP(6),
+    processed_at      TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS sync_logs (
+    id                      UUID PRIMARY KEY,
+    user_id                 UUID NOT NULL REFERENCES users (id),
+    account_type            VARCHAR(255),
+    sync_type               VARCHAR(255),
+    emails_scanned          INTEGER NOT NULL DEFAULT 0,
+    new_senders_found       INTEGER NOT NULL DEFAULT 0,
+    unsubscribe_links_found INTEGER NOT NULL DEFAULT 0,
+    status                  VARCHAR(255),
+    error_message           TEXT,
+    duration_ms             BIGINT,
+    started_at              TIMESTAMP(6),
+    completed_at            TIMESTAMP(6)
+);
@@ -0,0 +1,11 @@
+-- Messages per subscription per day (UTC) over the recent-count window, so email_count_30days is
+-- a sum over the last 30 days that delta syncs can add to and old days can drop out of. Rows
+-- older than the window are pruned daily by SubscriptionUpsertService.rollRecentCounts.
+CREATE TABLE IF NOT EXISTS subscription_daily_counts (
+    subscription_id UUID NOT NULL REFERENCES user_subscriptions(id) ON DELETE CASCADE,
+    day DATE NOT NULL,
+    email_count INTEGER NOT NULL,
+    PRIMARY KEY (subscription_id, day)
+);
+
+CREATE INDEX IF NOT EXISTS idx_subscription_daily_counts_day ON subscription_daily_counts (day);
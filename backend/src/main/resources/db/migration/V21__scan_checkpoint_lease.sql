@@ -0,0 +1,4 @@
+-- One scan per (user, account) at a time: the scan that claims the checkpoint row owns it until it
+-- finishes, fails or its lease runs out; a second scan starting meanwhile is turned away.
+ALTER TABLE scan_checkpoints ADD COLUMN IF NOT EXISTS locked_by UUID;
+ALTER TABLE scan_checkpoints ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP(6);
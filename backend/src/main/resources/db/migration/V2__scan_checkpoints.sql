@@ -0,0 +1,21 @@
+-- Gmail History API cursor and resumable scan state. IF NOT EXISTS because databases that ran
+-- the first checkpointing builds under ddl-auto=update already have both.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS gmail_history_id VARCHAR(255);
+
+CREATE TABLE IF NOT EXISTS scan_checkpoints (
+    id               UUID PRIMARY KEY,
+    user_id          UUID NOT NULL REFERENCES users (id),
+    sync_log_id      UUID REFERENCES sync_logs (id),
+    account_type     VARCHAR(255) NOT NULL,
+    sync_type        VARCHAR(255),
+    page_token       TEXT,
+    start_history_id VARCHAR(255),
+    history_id       VARCHAR(255),
+    sender_map       TEXT,
+    emails_scanned   INTEGER NOT NULL DEFAULT 0,
+    pages_processed  INTEGER NOT NULL DEFAULT 0,
+    created_at       TIMESTAMP(6),
+    updated_at       TIMESTAMP(6),
+    CONSTRAINT uk_scan_checkpoints_user_account UNIQUE (user_id, account_type)
+);
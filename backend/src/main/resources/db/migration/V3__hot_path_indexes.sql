@@ -0,0 +1,45 @@
+-- Indexes for the columns the dashboard, queue worker, consensus and sync history filter on.
+-- Built CONCURRENTLY so they can be applied to a live database without blocking writes; see
+-- the .conf file next to this script, which runs it outside a transaction.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text IN (
+                        'idx_user_subscriptions_user_status',
+                        'idx_categorization_queue_status_priority',
+                        'idx_categorization_queue_pending',
+                        'idx_categorization_queue_domain',
+                        'idx_user_corrections_sender_category',
+                        'idx_sync_logs_user_started')
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+-- Dashboard and status filters: findByUserIdAndStatus, findByUserIdWithSender
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_user_status
+    ON user_subscriptions (user_id, status);
+
+-- findPendingItems: status = 'pending' ORDER BY priority, created_at
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_categorization_queue_status_priority
+    ON categorization_queue (status, priority, created_at);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_categorization_queue_pending
+    ON categorization_queue (priority, created_at)
+    WHERE status = 'pending';
+
+-- Duplicate checks on enqueue: existsByDomainAndStatusIn, findQueuedDomains
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_categorization_queue_domain
+    ON categorization_queue (domain);
+
+-- Consensus: findTopCorrectionForSender groups by corrected_category per sender
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_corrections_sender_category
+    ON user_corrections (community_sender_id, corrected_category);
+
+-- findByUserIdOrderByStartedAtDesc
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_sync_logs_user_started
+    ON sync_logs (user_id, started_at);
@@ -0,0 +1,11 @@
+-- One precomputed dashboard per user, kept up to date on scans, unsubscribes and corrections
+CREATE TABLE IF NOT EXISTS dashboard_summaries (
+    user_id    UUID PRIMARY KEY REFERENCES users (id) ON DELETE CASCADE,
+    summary    TEXT NOT NULL,
+    stale      BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP(6)
+);
+
+-- markStaleForCommunitySender
+CREATE INDEX IF NOT EXISTS idx_user_subscriptions_community_sender
+    ON user_subscriptions (community_sender_id);
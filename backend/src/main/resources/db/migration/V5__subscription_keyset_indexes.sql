@@ -0,0 +1,29 @@
+-- Keyset pagination: WHERE user_id = ? [AND status = ? | AND account_type = ?]
+-- ORDER BY email_count_30days DESC, id. Built CONCURRENTLY, see the .conf file.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text IN (
+                        'idx_user_subscriptions_user_count',
+                        'idx_user_subscriptions_user_status_count',
+                        'idx_user_subscriptions_user_account_count')
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_user_count
+    ON user_subscriptions (user_id, email_count_30days DESC, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_user_status_count
+    ON user_subscriptions (user_id, status, email_count_30days DESC, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_user_account_count
+    ON user_subscriptions (user_id, account_type, email_count_30days DESC, id);
+
+-- Covered by the (user_id, status, ...) index above
+DROP INDEX CONCURRENTLY IF EXISTS idx_user_subscriptions_user_status;
@@ -0,0 +1,10 @@
+-- Stored effective category: custom_category if set, else the community sender's category,
+-- else 'Other'. Kept in sync by the application (entity callbacks, scan upsert and the bulk
+-- update on a community consensus change).
+ALTER TABLE user_subscriptions ADD COLUMN IF NOT EXISTS effective_category VARCHAR(255);
+
+UPDATE user_subscriptions us
+SET effective_category = COALESCE(NULLIF(us.custom_category, ''), cs.category, 'Other')
+FROM user_subscriptions s
+LEFT JOIN community_senders cs ON cs.id = s.community_sender_id
+WHERE s.id = us.id;
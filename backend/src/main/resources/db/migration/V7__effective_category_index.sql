@@ -0,0 +1,17 @@
+-- Category pages: WHERE user_id = ? AND effective_category = ? ORDER BY email_count_30days DESC, id.
+-- Built CONCURRENTLY, see the .conf file.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text = 'idx_user_subscriptions_user_category_count'
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_user_category_count
+    ON user_subscriptions (user_id, effective_category, email_count_30days DESC, id);
@@ -0,0 +1,7 @@
+-- Domain of sender_email (text after the last '@', lowercased), so subscriptions can be linked
+-- to a community sender created after they were scanned
+ALTER TABLE user_subscriptions ADD COLUMN IF NOT EXISTS sender_domain VARCHAR(255);
+
+UPDATE user_subscriptions
+SET sender_domain = lower(substring(sender_email FROM '@([^@]+)$'))
+WHERE sender_domain IS NULL;
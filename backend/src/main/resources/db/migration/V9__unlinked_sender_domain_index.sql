@@ -0,0 +1,19 @@
+-- CommunitySenderLinker: WHERE sender_domain = ? AND community_sender_id IS NULL.
+-- Partial, so it only holds the rows still waiting for a community sender. Built CONCURRENTLY,
+-- see the .conf file.
+-- A failed or cancelled CONCURRENTLY build leaves an INVALID index that IF NOT EXISTS would
+-- take as built, so any such leftover from an earlier attempt is dropped first.
+DO $$
+DECLARE
+    leftover regclass;
+BEGIN
+    FOR leftover IN SELECT i.indexrelid::regclass FROM pg_index i
+                    WHERE NOT i.indisvalid AND i.indexrelid::regclass::text = 'idx_user_subscriptions_unlinked_domain'
+    LOOP
+        EXECUTE 'DROP INDEX ' || leftover;
+    END LOOP;
+END $$;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_user_subscriptions_unlinked_domain
+    ON user_subscriptions (sender_domain)
+    WHERE community_sender_id IS NULL;
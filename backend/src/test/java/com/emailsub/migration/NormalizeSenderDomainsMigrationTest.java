@@ -0,0 +1,97 @@
+package com.emailsub.migration;
+
+import com.emailsub.service.DomainNormalizer;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Migrates to V16, seeds full-host keys the way older builds wrote them, then runs V17. Needs Docker.
+@Testcontainers(disabledWithoutDocker = true)
+class NormalizeSenderDomainsMigrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Test
+    void rekeysAndMergesFullHostRows() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        Flyway.configure().dataSource(dataSource).target("16").load().migrate();
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        UUID user = UUID.randomUUID();
+        jdbc.update("INSERT INTO users (id, email) VALUES (?, 'reader@example.com')", user);
+
+        // Two community senders for amazon.com under different hosts, the second more verified
+        UUID emailHost = sender(jdbc, "email.amazon.com", "Shopping", 2);
+        UUID marketingHost = sender(jdbc, "marketing.amazon.com", "Shopping", 5);
+        jdbc.update("INSERT INTO sender_category_votes VALUES (?, 'Finance', 3), (?, 'Finance', 4)",
+                emailHost, marketingHost);
+        subscription(jdbc, user, "deals@email.amazon.com", "email.amazon.com", emailHost);
+        // Scanned before any sender existed for its host; links once the keys match
+        subscription(jdbc, user, "orders@shipping.amazon.com", "shipping.amazon.com", null);
+
+        // Two open queue items that become one, plus one for an already known domain
+        UUID first = queued(jdbc, "news.example.com", 1);
+        UUID second = queued(jdbc, "mail.example.com", 1);
+        jdbc.update("INSERT INTO categorization_queue_waiters VALUES (?, ?), (?, ?)", first, user, second, user);
+        queued(jdbc, "store.amazon.com", 1);
+
+        Flyway.configure().dataSource(dataSource)
+                .javaMigrations(new V17__normalize_sender_domains(normalizer()))
+                .load().migrate();
+
+        assertThat(jdbc.queryForList("SELECT domain FROM community_senders", String.class))
+                .containsExactly("amazon.com");
+        assertThat(jdbc.queryForObject("SELECT id FROM community_senders", UUID.class)).isEqualTo(marketingHost);
+        assertThat(jdbc.queryForObject("SELECT verified_count FROM community_senders", Integer.class)).isEqualTo(7);
+        assertThat(jdbc.queryForObject("SELECT votes FROM sender_category_votes", Integer.class)).isEqualTo(7);
+
+        assertThat(jdbc.queryForList("SELECT DISTINCT sender_domain FROM user_subscriptions", String.class))
+                .containsExactly("amazon.com");
+        assertThat(jdbc.queryForList("SELECT DISTINCT community_sender_id FROM user_subscriptions", UUID.class))
+                .containsExactly(marketingHost);
+
+        assertThat(jdbc.queryForList("SELECT domain FROM categorization_queue", String.class))
+                .containsExactly("example.com");
+        assertThat(jdbc.queryForObject("SELECT demand FROM categorization_queue", Integer.class)).isEqualTo(1);
+    }
+
+    private static DomainNormalizer normalizer() {
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        return normalizer;
+    }
+
+    private static UUID sender(JdbcTemplate jdbc, String domain, String category, int verified) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO community_senders (id, domain, sender_name, category, verified_count, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, now())", id, domain, domain, category, verified);
+        return id;
+    }
+
+    private static void subscription(JdbcTemplate jdbc, UUID user, String email, String domain, UUID sender) {
+        jdbc.update("INSERT INTO user_subscriptions (id, user_id, sender_email, sender_domain, account_type, " +
+                "community_sender_id, effective_category, status) VALUES (?, ?, ?, ?, 'gmail', ?, 'Other', 'active')",
+                UUID.randomUUID(), user, email, domain, sender);
+    }
+
+    private static UUID queued(JdbcTemplate jdbc, String domain, int demand) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO categorization_queue (id, domain, status, demand, created_at) " +
+                "VALUES (?, ?, 'pending', ?, now())", id, domain, demand);
+        return id;
+    }
+}
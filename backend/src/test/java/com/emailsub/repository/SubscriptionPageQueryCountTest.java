@@ -0,0 +1,100 @@
+package com.emailsub.repository;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.model.User;
+import com.emailsub.model.UserSubscription;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// A page of the subscription list, including rendering it, must be one SELECT no matter how many
+// community senders it spans. Needs Docker; skipped without it.
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class SubscriptionPageQueryCountTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserSubscriptionRepository subscriptionRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = entityManager.persist(User.builder().email("reader@example.com").build());
+        for (int i = 0; i < 30; i++) {
+            CommunitySender sender = entityManager.persist(CommunitySender.builder()
+                    .domain("sender" + i + ".com")
+                    .senderName("Sender " + i)
+                    .category(i % 2 == 0 ? "Shopping" : "News")
+                    .build());
+            entityManager.persist(UserSubscription.builder()
+                    .user(user)
+                    .communitySender(sender)
+                    .senderEmail("news@sender" + i + ".com")
+                    .accountType("gmail")
+                    .status("active")
+                    .emailCount30days(i)
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pageIsOneQueryWithoutEntityLoads() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<SubscriptionView> page = subscriptionRepository.findPage(user.getId(), null, null, null, null, null, 20);
+        page.forEach(SubscriptionView::toMap);
+
+        assertThat(page).hasSize(20);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void categoryPageIsOneQuery() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<SubscriptionView> page = subscriptionRepository.findPage(user.getId(), "Shopping", null, null, null, null, 20);
+        page.forEach(SubscriptionView::toMap);
+
+        assertThat(page).hasSize(15).allMatch(view -> view.category().equals("Shopping"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+}
@@ -0,0 +1,91 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CategorizationQueue;
+import com.emailsub.model.CommunitySender;
+import com.emailsub.repository.CategorizationQueueRepository;
+import com.emailsub.repository.CommunitySenderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AiCategorizationServiceTest {
+
+    private final CategorizationQueueRepository queueRepository = mock(CategorizationQueueRepository.class);
+    private final CommunitySenderRepository communitySenderRepository = mock(CommunitySenderRepository.class);
+    private final CommunitySenderCache communitySenderCache = mock(CommunitySenderCache.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final AiCategorizationService service = new AiCategorizationService(queueRepository,
+            communitySenderRepository, communitySenderCache, null, eventPublisher, null, null, null);
+
+    @BeforeEach
+    void setUp() {
+        // The queue itself is empty, so processQueue only does its lease housekeeping
+        ReflectionTestUtils.setField(service, "workerCount", 1);
+        ReflectionTestUtils.setField(service, "batchSize", 10);
+        ReflectionTestUtils.setField(service, "groqRequestsPerMinute", 60);
+        ReflectionTestUtils.setField(service, "geminiRequestsPerMinute", 60);
+        ReflectionTestUtils.setField(service, "cloudflareRequestsPerMinute", 60);
+        ReflectionTestUtils.setField(service, "timeoutMs", 1000L);
+        ReflectionTestUtils.setField(service, "breakerFailureThreshold", 3);
+        ReflectionTestUtils.setField(service, "breakerOpenSeconds", 30L);
+        ReflectionTestUtils.setField(service, "hedgeMinDelayMs", 100L);
+        ReflectionTestUtils.setField(service, "hedgeDefaultDelayMs", 1000L);
+        service.startWorkers();
+        when(queueRepository.failExpiredLeases()).thenReturn(List.of());
+        when(communitySenderRepository.save(any(CommunitySender.class))).thenAnswer(call -> call.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stopWorkers();
+    }
+
+    @Test
+    void exhaustedExpiredItemIsFinishedAsOther() {
+        CategorizationQueue item = CategorizationQueue.builder()
+                .id(UUID.randomUUID()).domain("shop.com").senderName("Shop").status("failed").build();
+        when(queueRepository.failExpiredLeases()).thenReturn(List.of(item));
+
+        service.processQueue();
+
+        ArgumentCaptor<CommunitySender> saved = ArgumentCaptor.forClass(CommunitySender.class);
+        verify(communitySenderRepository).save(saved.capture());
+        assertThat(saved.getValue().getDomain()).isEqualTo("shop.com");
+        assertThat(saved.getValue().getCategory()).isEqualTo("Other");
+        assertThat(saved.getValue().getCategorizedBy()).isEqualTo("fallback");
+        verify(eventPublisher).publishEvent(any(CommunitySenderCreatedEvent.class));
+        verify(queueRepository).deleteWaiters(List.of(item.getId()));
+        verify(queueRepository).releaseExpiredLeases();
+    }
+
+    @Test
+    void knownDomainStillLosesItsWaiters() {
+        CategorizationQueue item = CategorizationQueue.builder()
+                .id(UUID.randomUUID()).domain("shop.com").status("failed").build();
+        when(queueRepository.failExpiredLeases()).thenReturn(List.of(item));
+        when(communitySenderRepository.existsByDomain("shop.com")).thenReturn(true);
+
+        service.processQueue();
+
+        verify(communitySenderRepository, never()).save(any());
+        verify(queueRepository).deleteWaiters(List.of(item.getId()));
+    }
+
+    @Test
+    void nothingExpiredTouchesNoWaiters() {
+        service.processQueue();
+
+        verify(queueRepository, never()).deleteWaiters(any());
+        verify(queueRepository).releaseExpiredLeases();
+    }
+}
@@ -0,0 +1,93 @@
+package com.emailsub.service;
+
+import com.emailsub.migration.V17__normalize_sender_domains;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Enqueue SQL against the migrated schema: one open item per domain, demand equal to its waiters.
+// Needs Docker.
+@Testcontainers(disabledWithoutDocker = true)
+class CategorizationQueueEnqueueTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private JdbcTemplate jdbc;
+    private AiCategorizationService service;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        Flyway flyway = Flyway.configure().dataSource(dataSource).cleanDisabled(false)
+                .javaMigrations(new V17__normalize_sender_domains(normalizer))
+                .load();
+        flyway.clean();
+        flyway.migrate();
+        jdbc = new JdbcTemplate(dataSource);
+        service = new AiCategorizationService(null, null, null, new ObjectMapper(), null, null, null, jdbc);
+    }
+
+    @Test
+    void demandCountsEachWaitingUserOnce() {
+        UUID alice = user("alice@example.com");
+        UUID bob = user("bob@example.com");
+
+        service.addAllToQueue(alice, List.of(sender("shop.com"), sender("news.com"), sender("shop.com")));
+        service.addAllToQueue(alice, List.of(sender("shop.com")));
+        service.addAllToQueue(bob, List.of(sender("shop.com")));
+
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM categorization_queue WHERE domain = 'shop.com'",
+                Integer.class)).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT demand FROM categorization_queue WHERE domain = 'shop.com'",
+                Integer.class)).isEqualTo(2);
+        assertThat(jdbc.queryForObject("SELECT demand FROM categorization_queue WHERE domain = 'news.com'",
+                Integer.class)).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM categorization_queue_waiters", Integer.class))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void finishedItemDoesNotBlockANewOne() {
+        UUID alice = user("alice@example.com");
+        service.addAllToQueue(alice, List.of(sender("shop.com")));
+        jdbc.update("UPDATE categorization_queue SET status = 'failed'");
+
+        service.addAllToQueue(alice, List.of(sender("shop.com")));
+
+        assertThat(jdbc.queryForList("SELECT status FROM categorization_queue ORDER BY status", String.class))
+                .containsExactly("failed", "pending");
+    }
+
+    private UUID user(String email) {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO users (id, email) VALUES (?, ?)", id, email);
+        return id;
+    }
+
+    private static GmailScanService.SubscriptionData sender(String domain) {
+        GmailScanService.SubscriptionData data = new GmailScanService.SubscriptionData();
+        data.domain = domain;
+        data.senderEmail = "hello@" + domain;
+        data.senderName = domain;
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.repository.CommunitySenderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class CommunitySenderCacheTest {
+
+    private CommunitySenderRepository repository;
+    private CommunitySenderCache cache;
+
+    @BeforeEach
+    void setUp() {
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        repository = mock(CommunitySenderRepository.class);
+        cache = new CommunitySenderCache(repository, normalizer, new SimpleMeterRegistry(), 100, 60, 5);
+    }
+
+    @Test
+    void cachesHitsAndMissesUnderTheRegistrableDomain() {
+        when(repository.findByDomain("example.com")).thenReturn(Optional.of(sender("example.com", "Shopping")));
+        when(repository.findByDomain("unknown.org")).thenReturn(Optional.empty());
+
+        assertThat(cache.get("mail.example.com")).isPresent();
+        assertThat(cache.get("example.com").get().getCategory()).isEqualTo("Shopping");
+        assertThat(cache.get("unknown.org")).isEmpty();
+        assertThat(cache.get("unknown.org")).isEmpty();
+
+        verify(repository, times(1)).findByDomain("example.com");
+        verify(repository, times(1)).findByDomain("unknown.org");
+    }
+
+    @Test
+    void invalidateDropsTheEntry() {
+        when(repository.findByDomain("example.com")).thenReturn(Optional.empty());
+        cache.get("example.com");
+
+        cache.invalidate("news.example.com");
+        cache.get("example.com");
+
+        verify(repository, times(2)).findByDomain("example.com");
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() {
+        // The sender is created and invalidated while the miss is still loading the old (absent) row
+        when(repository.findByDomain("example.com")).thenAnswer(invocation -> {
+            cache.invalidate("example.com");
+            return Optional.empty();
+        }).thenReturn(Optional.of(sender("example.com", "Finance")));
+
+        assertThat(cache.get("example.com")).isEmpty();
+        assertThat(cache.get("example.com")).isPresent();
+    }
+
+    @Test
+    void batchLoadOverlappingAnInvalidationIsNotCached() {
+        when(repository.findByDomainIn(anyCollection())).thenAnswer(invocation -> {
+            cache.invalidate("example.com");
+            return List.of();
+        });
+        when(repository.findByDomain("example.com")).thenReturn(Optional.of(sender("example.com", "Finance")));
+
+        assertThat(cache.getAll(List.of("example.com"))).isEmpty();
+        assertThat(cache.get("example.com")).isPresent();
+    }
+
+    @Test
+    void invalidateAllClearsEveryEntry() {
+        when(repository.findByDomain(anyString())).thenReturn(Optional.empty());
+        cache.get("a.com");
+        cache.get("b.com");
+
+        cache.invalidateAll();
+        cache.get("a.com");
+        cache.get("b.com");
+
+        verify(repository, times(2)).findByDomain("a.com");
+        verify(repository, times(2)).findByDomain("b.com");
+    }
+
+    private CommunitySender sender(String domain, String category) {
+        CommunitySender sender = new CommunitySender();
+        sender.setId(UUID.randomUUID());
+        sender.setDomain(domain);
+        sender.setCategory(category);
+        return sender;
+    }
+}
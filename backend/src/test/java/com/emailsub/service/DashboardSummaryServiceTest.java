@@ -0,0 +1,154 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.model.DashboardSummary;
+import com.emailsub.model.User;
+import com.emailsub.model.UserSubscription;
+import com.emailsub.repository.DashboardSummaryRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class DashboardSummaryServiceTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID C = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private DashboardSummaryRepository summaryRepository;
+    private JdbcTemplate jdbcTemplate;
+    private DashboardSummaryService service;
+    private DashboardSummary summary;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        summaryRepository = mock(DashboardSummaryRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new DashboardSummaryService(summaryRepository, jdbcTemplate, objectMapper);
+        ReflectionTestUtils.setField(service, "topSendersPerCategory", 2);
+
+        // Shopping shows A and B out of three senders, Finance shows its only sender C
+        Map<String, Object> dashboard = new LinkedHashMap<>();
+        Map<String, Object> categories = new LinkedHashMap<>();
+        categories.put("Finance", List.of(row(C, 10, "Finance")));
+        categories.put("Shopping", List.of(row(A, 30, "Shopping"), row(B, 20, "Shopping")));
+        dashboard.put("categories", categories);
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("Finance", Map.of("total", 1, "active", 1));
+        counts.put("Shopping", Map.of("total", 3, "active", 3));
+        dashboard.put("categoryCounts", counts);
+        dashboard.put("cursors", Map.of("Shopping", SubscriptionService.encodeCursor(20, B)));
+        dashboard.put("totalActive", 4);
+        dashboard.put("totalUnsubscribed", 0);
+        dashboard.put("totalSenders", 4);
+
+        summary = DashboardSummary.builder().userId(USER_ID).summary(objectMapper.writeValueAsString(dashboard)).build();
+        when(summaryRepository.findByIdForUpdate(USER_ID)).thenReturn(Optional.of(summary));
+    }
+
+    @Test
+    void correctionMovesCountsAndRowWithoutRebuilding() throws Exception {
+        service.onCategoryChanged(subscription(B, 20, "Finance"), "Shopping");
+
+        Map<String, Object> dashboard = dashboard();
+        assertThat(counts(dashboard, "Shopping")).containsEntry("total", 2).containsEntry("active", 2);
+        assertThat(counts(dashboard, "Finance")).containsEntry("total", 2).containsEntry("active", 2);
+        assertThat(ids(dashboard, "Shopping")).containsExactly(A.toString());
+        assertThat(ids(dashboard, "Finance")).containsExactly(B.toString(), C.toString());
+        // Shopping still has a sender past its list; Finance now shows all of its senders
+        assertThat(cursors(dashboard)).containsEntry("Shopping", SubscriptionService.encodeCursor(30, A))
+                .doesNotContainKey("Finance");
+        assertThat(dashboard).containsEntry("totalSenders", 4);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void emptiedCategoryIsDroppedAndNewOneKeepsCategoryOrder() throws Exception {
+        service.onCategoryChanged(subscription(C, 10, "Travel"), "Finance");
+
+        Map<String, Object> dashboard = dashboard();
+        Map<String, Object> counts = castMap(dashboard.get("categoryCounts"));
+        assertThat(counts.keySet()).containsExactly("Shopping", "Travel");
+        assertThat(ids(dashboard, "Travel")).containsExactly(C.toString());
+    }
+
+    @Test
+    void rowBehindACursorIsNotAppended() throws Exception {
+        service.onCategoryChanged(subscription(C, 10, "Shopping"), "Finance");
+
+        Map<String, Object> dashboard = dashboard();
+        assertThat(counts(dashboard, "Shopping")).containsEntry("total", 4);
+        assertThat(ids(dashboard, "Shopping")).containsExactly(A.toString(), B.toString());
+        assertThat(cursors(dashboard)).containsEntry("Shopping", SubscriptionService.encodeCursor(20, B));
+    }
+
+    @Test
+    void staleSummaryIsLeftForTheNextRead() {
+        summary.setStale(true);
+        String before = summary.getSummary();
+
+        service.onCategoryChanged(subscription(B, 20, "Finance"), "Shopping");
+
+        assertThat(summary.getSummary()).isEqualTo(before);
+        verify(summaryRepository, never()).save(any());
+    }
+
+    private UserSubscription subscription(UUID id, int count30days, String category) {
+        User user = new User();
+        user.setId(USER_ID);
+        return UserSubscription.builder()
+                .id(id)
+                .user(user)
+                .communitySender(new CommunitySender())
+                .senderEmail(id + "@example.com")
+                .emailCount30days(count30days)
+                .status("active")
+                .accountType("gmail")
+                .customCategory(category)
+                .effectiveCategory(category)
+                .build();
+    }
+
+    private Map<String, Object> row(UUID id, int count30days, String category) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("emailCount30days", count30days);
+        row.put("status", "active");
+        row.put("category", category);
+        return row;
+    }
+
+    private Map<String, Object> dashboard() throws Exception {
+        return objectMapper.readValue(summary.getSummary(), new TypeReference<LinkedHashMap<String, Object>>() {});
+    }
+
+    private Map<String, Object> counts(Map<String, Object> dashboard, String category) {
+        Map<String, Map<String, Object>> counts = castMap(dashboard.get("categoryCounts"));
+        return counts.get(category);
+    }
+
+    private Map<String, Object> cursors(Map<String, Object> dashboard) {
+        return castMap(dashboard.get("cursors"));
+    }
+
+    private List<Object> ids(Map<String, Object> dashboard, String category) {
+        Map<String, List<Map<String, Object>>> categories = castMap(dashboard.get("categories"));
+        return categories.get(category).stream().map(row -> row.get("id")).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> castMap(Object value) {
+        return (Map<String, V>) value;
+    }
+}
@@ -0,0 +1,99 @@
+package com.emailsub.service;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+
+// Runs the listener against a real Postgres, migrated to the schema that has the NOTIFY triggers.
+// Needs Docker.
+@Testcontainers(disabledWithoutDocker = true)
+class DatabaseNotificationListenerTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private static final long WAIT_MS = 10_000;
+
+    private final AiCategorizationService categorizationService = mock(AiCategorizationService.class);
+    private final CommunitySenderCache communitySenderCache = mock(CommunitySenderCache.class);
+    private JdbcTemplate jdbc;
+    private DatabaseNotificationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        Flyway.configure().dataSource(dataSource).target("16").load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+
+        listener = new DatabaseNotificationListener(categorizationService, communitySenderCache);
+        ReflectionTestUtils.setField(listener, "enabled", true);
+        ReflectionTestUtils.setField(listener, "pollTimeoutMs", 200);
+        ReflectionTestUtils.setField(listener, "url", POSTGRES.getJdbcUrl());
+        ReflectionTestUtils.setField(listener, "username", POSTGRES.getUsername());
+        ReflectionTestUtils.setField(listener, "password", POSTGRES.getPassword());
+        listener.start();
+        awaitListening();
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    void queuedDomainWakesTheWorkers() {
+        enqueue("shop.com");
+
+        verify(categorizationService, timeout(WAIT_MS)).processQueue();
+    }
+
+    @Test
+    void changedCommunitySenderIsEvicted() {
+        UUID id = UUID.randomUUID();
+        jdbc.update("INSERT INTO community_senders (id, domain, sender_name, category, verified_count, created_at) " +
+                "VALUES (?, 'shop.com', 'Shop', 'Shopping', 1, now())", id);
+        verify(communitySenderCache, timeout(WAIT_MS)).invalidate("shop.com");
+
+        jdbc.update("UPDATE community_senders SET category = 'Finance' WHERE id = ?", id);
+        verify(communitySenderCache, timeout(WAIT_MS).times(2)).invalidate("shop.com");
+    }
+
+    @Test
+    void droppedConnectionDrainsOnReconnectAndListensAgain() {
+        // Queued while the listener is gone, so its notification is lost
+        jdbc.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity " +
+                "WHERE query LIKE 'LISTEN%' AND pid <> pg_backend_pid()");
+        enqueue("shop.com");
+
+        // Reconnecting drains the queue and clears the cache without waiting for a notification
+        awaitListening();
+
+        enqueue("news.com");
+        verify(categorizationService, timeout(WAIT_MS)).processQueue();
+    }
+
+    // Every (re)connect clears the cache and then drains the queue once
+    private void awaitListening() {
+        verify(communitySenderCache, timeout(WAIT_MS)).invalidateAll();
+        verify(categorizationService, timeout(WAIT_MS)).processQueue();
+        clearInvocations(categorizationService, communitySenderCache);
+    }
+
+    private void enqueue(String domain) {
+        jdbc.update("INSERT INTO categorization_queue (id, domain, status, demand, created_at) " +
+                "VALUES (?, ?, 'pending', 1, now())", UUID.randomUUID(), domain);
+    }
+}
@@ -0,0 +1,76 @@
+package com.emailsub.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DomainNormalizerTest {
+
+    private static DomainNormalizer normalizer;
+
+    @BeforeAll
+    static void setUp() {
+        normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of("news.google.com"));
+        normalizer.load();
+    }
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({
+            "email.amazon.com, amazon.com",
+            "Marketing.Amazon.COM., amazon.com",
+            "amazon.co.uk, amazon.co.uk",
+            "mail.amazon.co.jp, amazon.co.jp",
+            "e.mail.linkedin.fr, linkedin.fr",
+            // Private section of the list
+            "octocat.github.io, octocat.github.io",
+            // Wildcard and exception rules: *.ck, !www.ck, *.kawasaki.jp, !city.kawasaki.jp
+            "shop.example.co.ck, example.co.ck",
+            "mail.www.ck, www.ck",
+            "a.b.kawasaki.jp, a.b.kawasaki.jp",
+            "mail.city.kawasaki.jp, city.kawasaki.jp",
+            // The list has рф in Unicode; mail hosts carry the punycode form
+            "news.example.xn--p1ai, example.xn--p1ai",
+            // Unknown TLDs fall back to the implicit * rule
+            "mail.example.internal, example.internal",
+            "com, com",
+            // Overrides keep the subdomain
+            "alerts.news.google.com, news.google.com",
+            "mail.google.com, google.com"
+    })
+    void registrableDomain(String host, String expected) {
+        assertThat(normalizer.registrableDomain(host)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "1.2.3.4",
+            "10.0.0.254",
+            "[192.168.0.1]",
+            "[ipv6:2001:db8::1]",
+            "2001:db8::1"
+    })
+    void ipLiteralsAreKeptWhole(String host) {
+        assertThat(normalizer.registrableDomain(host)).isEqualTo(host);
+        assertThat(normalizer.registrableLabel(host)).isNull();
+    }
+
+    @Test
+    void registrableLabelIsTheBrand() {
+        assertThat(normalizer.registrableLabel("e.mail.linkedin.fr")).isEqualTo("linkedin");
+        assertThat(normalizer.registrableLabel("amazon.co.jp")).isEqualTo("amazon");
+        assertThat(normalizer.registrableLabel("co.uk")).isNull();
+    }
+
+    @Test
+    void nullAndEmptyHosts() {
+        assertThat(normalizer.registrableDomain(null)).isNull();
+        assertThat(normalizer.registrableDomain("")).isNull();
+    }
+}
@@ -0,0 +1,186 @@
+package com.emailsub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GmailBatchParserTest {
+
+    private static final MediaType CONTENT_TYPE = MediaType.parseMediaType("multipart/mixed; boundary=batch_abc");
+
+    private final MessageStreamParser messageParser = new MessageStreamParser(new ObjectMapper());
+
+    @Test
+    void parsesEachSubResponseAcrossArbitraryChunkBoundaries() {
+        String body = "--batch_abc\r\n"
+                + "Content-Type: application/http\r\n"
+                + "Content-ID: <response-m1>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json; charset=UTF-8\r\n\r\n"
+                + MessageParsingBenchmark.gmailMessageJson(1) + "\r\n"
+                + "--batch_abc\r\n"
+                + "Content-Type: application/http\r\n"
+                + "Content-ID: <response-m2>\r\n\r\n"
+                + "HTTP/1.1 429 Too Many Requests\r\n"
+                + "Content-Type: application/json; charset=UTF-8\r\n\r\n"
+                + "{\"error\":{\"code\":429}}\r\n"
+                + "--batch_abc\r\n"
+                + "Content-Type: application/http\r\n"
+                + "Content-ID: <response-m3>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\n\r\n"
+                + "{\n  \"id\": \"m3\",\n  \"payload\": {\"headers\": [\n"
+                + "    {\"name\": \"List-Unsubscribe\", \"value\": \"<https://x.example.com/--batch_ab>\"}\n  ]}\n}\r\n"
+                + "--batch_abc--\r\n";
+
+        for (int chunkSize : new int[]{1, 3, 11, 64, body.length()}) {
+            List<GmailBatchParser.Part> parts = parse(CONTENT_TYPE, body, chunkSize);
+
+            assertThat(parts).hasSize(3);
+            assertThat(parts.get(0).contentId).isEqualTo("m1");
+            assertThat(parts.get(0).status).isEqualTo(200);
+            assertThat(parts.get(0).message.subject).isEqualTo("Weekly deals #1");
+            assertThat(parts.get(0).message.listUnsubscribe)
+                    .isEqualTo("<https://shop.example.com/u?id=1>, <mailto:unsub@shop.example.com>");
+            assertThat(parts.get(1).contentId).isEqualTo("m2");
+            assertThat(parts.get(1).status).isEqualTo(429);
+            assertThat(parts.get(1).message).isNull();
+            assertThat(parts.get(2).contentId).isEqualTo("m3");
+            assertThat(parts.get(2).message.listUnsubscribe).isEqualTo("<https://x.example.com/--batch_ab>");
+        }
+    }
+
+    @Test
+    void parsesAFullBatchInNettySizedChunks() {
+        MediaType contentType = MediaType.parseMediaType("multipart/mixed; boundary=batch_zxcv");
+
+        List<GmailBatchParser.Part> parts = parse(contentType, MessageParsingBenchmark.gmailBatchBody(100), 8192);
+
+        assertThat(parts).hasSize(100);
+        assertThat(parts).allSatisfy(part -> assertThat(part.message.from).isNotNull());
+        assertThat(parts.get(99).contentId).isEqualTo("18e0c99");
+        assertThat(parts.get(99).message.subject).isEqualTo("Weekly deals #99");
+    }
+
+    @Test
+    void readsDirectBuffers() {
+        String body = "--batch_abc\r\n"
+                + "Content-ID: <response-m1>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\n\r\n"
+                + MessageParsingBenchmark.gmailMessageJson(1) + "\r\n"
+                + "--batch_abc--\r\n";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += 10) {
+            int to = Math.min(from + 10, bytes.length);
+            ByteBuffer direct = ByteBuffer.allocateDirect(to - from).put(bytes, from, to - from).flip();
+            chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(direct));
+        }
+
+        List<GmailBatchParser.Part> parts = GmailBatchParser.parse(CONTENT_TYPE, Flux.fromIterable(chunks),
+                messageParser::gmailMessageFeed).collectList().block();
+
+        assertThat(parts).hasSize(1);
+        assertThat(parts.get(0).contentId).isEqualTo("m1");
+        assertThat(parts.get(0).message.subject).isEqualTo("Weekly deals #1");
+    }
+
+    @Test
+    void acceptsBareLineFeedsAndQuotedBoundary() {
+        MediaType quoted = MediaType.parseMediaType("multipart/mixed; boundary=\"batch_abc\"");
+        String body = "--batch_abc\n"
+                + "Content-Type: application/http\n"
+                + "content-id: <response-m1>\n\n"
+                + "HTTP/1.1 200 OK\n"
+                + "Content-Type: application/json\n\n"
+                + "{\"payload\":{\"headers\":[{\"name\":\"From\",\"value\":\"a@example.com\"}]}}\n"
+                + "--batch_abc--";
+
+        List<GmailBatchParser.Part> parts = parse(quoted, body, 5);
+
+        assertThat(parts).hasSize(1);
+        assertThat(parts.get(0).contentId).isEqualTo("m1");
+        assertThat(parts.get(0).status).isEqualTo(200);
+        assertThat(parts.get(0).message.from).isEqualTo("a@example.com");
+    }
+
+    @Test
+    void keepsPartsWithoutContentIdOrBody() {
+        String body = "--batch_abc\r\n"
+                + "Content-Type: application/http\r\n\r\n"
+                + "HTTP/1.1 500 Internal Server Error\r\n"
+                + "--batch_abc\r\n"
+                + "Content-Type: application/http\r\n"
+                + "Content-ID: <response-m3>\r\n\r\n"
+                + "HTTP/1.1 garbage\r\n\r\n"
+                + "--batch_abc--\r\n";
+
+        List<GmailBatchParser.Part> parts = parse(CONTENT_TYPE, body, 7);
+
+        assertThat(parts).hasSize(2);
+        assertThat(parts.get(0).contentId).isNull();
+        assertThat(parts.get(0).status).isEqualTo(500);
+        assertThat(parts.get(0).message).isNull();
+        assertThat(parts.get(1).contentId).isEqualTo("m3");
+        assertThat(parts.get(1).status).isZero();
+    }
+
+    @Test
+    void unreadableBodyKeepsThePartWithoutAMessage() {
+        String body = "--batch_abc\r\n"
+                + "Content-ID: <response-m1>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\n\r\n"
+                + "{\"id\": nope}\r\n"
+                + "--batch_abc\r\n"
+                + "Content-ID: <response-m2>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\n\r\n"
+                + "{\"id\":\"m2\"}\r\n"
+                + "--batch_abc--\r\n";
+
+        List<GmailBatchParser.Part> parts = parse(CONTENT_TYPE, body, body.length());
+
+        assertThat(parts).extracting(part -> part.contentId).containsExactly("m1", "m2");
+        assertThat(parts.get(0).message).isNull();
+        assertThat(parts.get(1).message).isNotNull();
+    }
+
+    @Test
+    void skipsPreambleAndPartsWithoutHeaders() {
+        String body = "preamble text\r\n"
+                + "--batch_abc\r\n"
+                + "not a part\r\n"
+                + "--batch_abc--\r\n";
+
+        assertThat(parse(CONTENT_TYPE, body, 4)).isEmpty();
+    }
+
+    @Test
+    void rejectsNonMultipartResponses() {
+        assertThatThrownBy(() -> parse(MediaType.APPLICATION_JSON, "{}", 2))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> parse(null, "{}", 2))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private List<GmailBatchParser.Part> parse(MediaType contentType, String body, int chunkSize) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += chunkSize) {
+            chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(bytes, from, Math.min(from + chunkSize, bytes.length))));
+        }
+        return GmailBatchParser.parse(contentType, Flux.fromIterable(chunks), messageParser::gmailMessageFeed)
+                .collectList().block();
+    }
+}
@@ -0,0 +1,87 @@
+package com.emailsub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GmailScanServiceTest {
+
+    private final GmailScanService service = new GmailScanService(null, null, null, null,
+            new MessageStreamParser(new ObjectMapper()), null, null, null, null);
+    private final List<ClientRequest> requests = new ArrayList<>();
+    private final Queue<ClientResponse> responses = new ConcurrentLinkedQueue<>();
+    private final WebClient client = WebClient.builder()
+            .exchangeFunction(request -> {
+                requests.add(request);
+                return Mono.just(responses.remove());
+            })
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "globalConcurrency", 4);
+        ReflectionTestUtils.setField(service, "throttleMaxAttempts", 3);
+        ReflectionTestUtils.setField(service, "throttleBaseDelayMs", 1L);
+        ReflectionTestUtils.setField(service, "throttleMaxDelayMs", 4L);
+        service.init();
+    }
+
+    @Test
+    void throttledAndMissingPartsGoOutAgainInOneLaterBatch() {
+        responses.add(batch(part("m1", 200), part("m2", 429)));
+        responses.add(batch(part("m2", 200), part("m3", 200)));
+
+        List<ScannedMessage> messages = service.fetchMessages(client, List.of("m1", "m2", "m3"))
+                .collectList().block();
+
+        assertThat(messages).extracting(message -> message.subject).containsExactly("m1", "m2", "m3");
+        // Had m1 gone out again, the second response would leave it unanswered and a third batch follow
+        assertThat(requests).hasSize(2).allSatisfy(request -> assertThat(request.method()).isEqualTo(HttpMethod.POST));
+    }
+
+    @Test
+    void throttledBatchIsNeverExpandedIntoSingleFetches() {
+        for (int i = 0; i < 3; i++) {
+            responses.add(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).build());
+        }
+
+        List<ScannedMessage> messages = service.fetchMessages(client, List.of("m1", "m2")).collectList().block();
+
+        assertThat(messages).isEmpty();
+        assertThat(requests).hasSize(3).allSatisfy(request -> assertThat(request.method()).isEqualTo(HttpMethod.POST));
+    }
+
+    private static ClientResponse batch(String... parts) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header("Content-Type", "multipart/mixed; boundary=batch_test")
+                .body(String.join("", parts) + "--batch_test--\r\n")
+                .build();
+    }
+
+    // A sub-response whose message subject is its id
+    private static String part(String id, int status) {
+        return "--batch_test\r\n"
+                + "Content-Type: application/http\r\n"
+                + "Content-ID: <response-" + id + ">\r\n\r\n"
+                + "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + (status == 200
+                        ? "{\"id\":\"" + id + "\",\"payload\":{\"headers\":[{\"name\":\"Subject\",\"value\":\"" + id + "\"}]}}"
+                        : "{\"error\":{\"code\":" + status + "}}")
+                + "\r\n";
+    }
+}
@@ -0,0 +1,133 @@
+package com.emailsub.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// MailHeaderParser against the regex helpers the scan services used before it, on a mix of
+// well-formed and malformed headers. Scores are per message (From + List-Unsubscribe +
+// List-Unsubscribe-Post); main also reports gc.alloc.rate.norm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderParsingBenchmark {
+
+    private static final String[] FROM = {
+            "John Doe <john@example.com>",
+            "\"Doe, John\" <John.Doe@Example.COM>",
+            "news@shop.example.com",
+            "news@shop.example.com (Shop News)",
+            "'Shop' <news@shop.example.com>",
+            "Shop <news@shop.example.com",
+            "=?UTF-8?B?w4RwZmVs?= <a@example.de>",
+            "=?utf-8?q?Caf=C3=A9?= =?utf-8?q?_Bar?= <cafe@example.com>",
+    };
+
+    private static final String[] LIST_UNSUBSCRIBE = {
+            "<https://shop.example.com/u?id=1>, <mailto:unsub@shop.example.com>",
+            "<mailto:unsub@shop.example.com?subject=unsubscribe>",
+            "<https://shop.example.com/u?a=1,2>",
+            "https://shop.example.com/u",
+            "<mailto:unsub@shop.example.com>, <https://shop.example.com/unsubscribe/abcdef0123456789>",
+            "< https://shop.example.com/u >",
+            "<https://t.example.com/u?e=news%40shop.example.com&l=42&h=9f86d081884c7d65>",
+            "<mailto:a@example.com>",
+    };
+
+    private static final String[] LIST_UNSUBSCRIBE_POST = {
+            "List-Unsubscribe=One-Click", null, null, "List-Unsubscribe=One-Click",
+            null, "List-Unsubscribe=One-Click", "List-Unsubscribe=One-Click", null,
+    };
+
+    private MailHeaderParser parser;
+
+    @Setup
+    public void setUp() {
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        parser = new MailHeaderParser(normalizer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void singlePass(Blackhole blackhole) {
+        for (int i = 0; i < FROM.length; i++) {
+            MailHeaderParser.Address address = parser.parseFrom(FROM[i]);
+            MailHeaderParser.UnsubscribeTargets targets = parser.parseListUnsubscribe(LIST_UNSUBSCRIBE[i]);
+            blackhole.consume(address.email);
+            blackhole.consume(address.name);
+            blackhole.consume(targets.url);
+            blackhole.consume(targets.mailto);
+            blackhole.consume(parser.unsubscribeType(LIST_UNSUBSCRIBE_POST[i], targets.url));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void previousRegex(Blackhole blackhole) {
+        for (int i = 0; i < FROM.length; i++) {
+            String url = RegexHelpers.extractUrl(LIST_UNSUBSCRIBE[i]);
+            blackhole.consume(RegexHelpers.extractEmail(FROM[i]));
+            blackhole.consume(RegexHelpers.extractName(FROM[i]));
+            blackhole.consume(url);
+            blackhole.consume(RegexHelpers.extractMailto(LIST_UNSUBSCRIBE[i]));
+            blackhole.consume(RegexHelpers.unsubscribeType(LIST_UNSUBSCRIBE_POST[i], url));
+        }
+    }
+
+    // The helpers GmailScanService and OutlookScanService each carried before MailHeaderParser
+    private static class RegexHelpers {
+        static final Pattern UNSUBSCRIBE_URL_PATTERN = Pattern.compile("<(https?://[^>]+)>", Pattern.CASE_INSENSITIVE);
+        static final Pattern UNSUBSCRIBE_MAILTO_PATTERN = Pattern.compile("<mailto:([^>]+)>", Pattern.CASE_INSENSITIVE);
+
+        static String extractEmail(String from) {
+            if (from == null) return null;
+            Pattern p = Pattern.compile("<([^>]+@[^>]+)>");
+            Matcher m = p.matcher(from);
+            if (m.find()) return m.group(1).toLowerCase();
+            if (from.contains("@")) return from.trim().toLowerCase();
+            return null;
+        }
+
+        static String extractName(String from) {
+            if (from == null) return null;
+            if (from.contains("<")) return from.substring(0, from.indexOf("<")).trim().replaceAll("[\"']", "");
+            return from.trim();
+        }
+
+        static String extractUrl(String header) {
+            Matcher m = UNSUBSCRIBE_URL_PATTERN.matcher(header);
+            return m.find() ? m.group(1) : null;
+        }
+
+        static String extractMailto(String header) {
+            Matcher m = UNSUBSCRIBE_MAILTO_PATTERN.matcher(header);
+            return m.find() ? m.group(1) : null;
+        }
+
+        static String unsubscribeType(String postHeader, String url) {
+            if (postHeader != null && postHeader.contains("One-Click")) return "one-click";
+            if (url != null) return "link";
+            return "mailto";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(HeaderParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
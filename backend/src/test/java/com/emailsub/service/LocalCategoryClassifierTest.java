@@ -0,0 +1,89 @@
+package com.emailsub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class LocalCategoryClassifierTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalCategoryClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        jdbcTemplate = mock(JdbcTemplate.class);
+        classifier = new LocalCategoryClassifier(jdbcTemplate, normalizer);
+        ReflectionTestUtils.setField(classifier, "minConfidence", 0.9);
+        ReflectionTestUtils.setField(classifier, "minTrainingSenders", 500);
+    }
+
+    @Test
+    void knownBrandIsFoundUnderAnyPublicSuffix() {
+        assertThat(classifier.classify("linkedin.fr", null).category()).isEqualTo("Jobs");
+        assertThat(classifier.classify("amazon.co.jp", null).category()).isEqualTo("Shopping");
+        assertThat(classifier.classify("e.mail.linkedin.com", null).category()).isEqualTo("Jobs");
+        assertThat(classifier.classify("amazon.co.jp", null).source()).isEqualTo("domain-rule");
+    }
+
+    @Test
+    void everydayWordBrandsOnlyMatchTheirOwnDomain() {
+        assertThat(classifier.classify("news.delta.com", null).category()).isEqualTo("Travel");
+        assertThat(classifier.classify("hm.com", null).category()).isEqualTo("Shopping");
+        assertThat(classifier.classify("bbc.co.uk", null).category()).isEqualTo("News");
+
+        for (String unrelated : new String[]{"delta.org", "aa.org", "hm.edu", "target.io", "united.org",
+                "wise.edu", "calm.de", "threads.shop"}) {
+            assertThat(classifier.classify(unrelated, null)).as(unrelated).isNull();
+        }
+    }
+
+    @Test
+    void suffixLabelIsNotMistakenForTheBrand() {
+        // "fr" and "jp" are suffixes here, not brands; nothing else identifies these senders
+        assertThat(classifier.classify("example.fr", null)).isNull();
+        assertThat(classifier.classify("example.co.jp", null)).isNull();
+    }
+
+    @Test
+    void singleKeywordIsNotConfidentEnough() {
+        assertThat(classifier.classify("acme.io", "Acme Jobs")).isNull();
+    }
+
+    @Test
+    void agreeingKeywordsAreConfident() {
+        LocalCategoryClassifier.Classification result = classifier.classify("careers.acme.io", "Acme Jobs");
+
+        assertThat(result.category()).isEqualTo("Jobs");
+        assertThat(result.source()).isEqualTo("keyword-rule");
+        assertThat(result.confidence()).isGreaterThanOrEqualTo(0.9).isLessThan(0.99);
+    }
+
+    @Test
+    void repeatedKeywordCountsOnce() {
+        assertThat(classifier.classify("jobs.acme.io", "Jobs")).isNull();
+    }
+
+    @Test
+    void conflictingKeywordsReduceConfidence() {
+        assertThat(classifier.classify("shop.acme.io", "Acme Daily News")).isNull();
+    }
+
+    @Test
+    void trainingIncludesSendersWithoutAProvider() {
+        classifier.retrain();
+
+        verify(jdbcTemplate).query(contains("categorized_by IS NULL"), any(RowCallbackHandler.class));
+    }
+}
@@ -0,0 +1,89 @@
+package com.emailsub.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailHeaderParserTest {
+
+    private static MailHeaderParser parser;
+
+    @BeforeAll
+    static void setUp() {
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        parser = new MailHeaderParser(normalizer);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvFileSource(resources = "/mail-headers/from.csv", delimiter = '|', quoteCharacter = '`')
+    void parsesFromCorpus(String header, String email, String name) {
+        MailHeaderParser.Address address = parser.parseFrom(header);
+
+        assertThat(address.email).isEqualTo(email);
+        assertThat(address.name).isEqualTo(name);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvFileSource(resources = "/mail-headers/list-unsubscribe.csv", delimiter = '|', quoteCharacter = '`')
+    void parsesListUnsubscribeCorpus(String header, String url, String mailto) {
+        MailHeaderParser.UnsubscribeTargets targets = parser.parseListUnsubscribe(header);
+
+        assertThat(targets.url).isEqualTo(url);
+        assertThat(targets.mailto).isEqualTo(mailto);
+    }
+
+    @Test
+    void handlesMissingHeaders() {
+        assertThat(parser.parseFrom(null).email).isNull();
+        assertThat(parser.parseFrom(null).name).isNull();
+        assertThat(parser.parseListUnsubscribe(null).url).isNull();
+        assertThat(parser.parseListUnsubscribe(null).mailto).isNull();
+    }
+
+    @Test
+    void parsesFoldedHeaders() {
+        MailHeaderParser.Address address = parser.parseFrom("\"Shop News\"\r\n <news@shop.example.com>");
+        assertThat(address.email).isEqualTo("news@shop.example.com");
+        assertThat(address.name).isEqualTo("Shop News");
+
+        MailHeaderParser.UnsubscribeTargets targets =
+                parser.parseListUnsubscribe("<https://shop.example.com/u>,\r\n\t<mailto:a@example.com>");
+        assertThat(targets.url).isEqualTo("https://shop.example.com/u");
+        assertThat(targets.mailto).isEqualTo("a@example.com");
+    }
+
+    @Test
+    void recognizesOneClickPostHeader() {
+        assertThat(parser.isOneClick("List-Unsubscribe=One-Click")).isTrue();
+        assertThat(parser.isOneClick("list-unsubscribe=one-click")).isTrue();
+        assertThat(parser.isOneClick("One-Click")).isTrue();
+        assertThat(parser.isOneClick("List-Unsubscribe=OneClick")).isFalse();
+        assertThat(parser.isOneClick("")).isFalse();
+        assertThat(parser.isOneClick(null)).isFalse();
+    }
+
+    @Test
+    void picksUnsubscribeType() {
+        assertThat(parser.unsubscribeType("List-Unsubscribe=One-Click", "https://x.example.com")).isEqualTo("one-click");
+        assertThat(parser.unsubscribeType("List-Unsubscribe=One-Click", null)).isEqualTo("mailto");
+        assertThat(parser.unsubscribeType(null, "https://x.example.com")).isEqualTo("link");
+        assertThat(parser.unsubscribeType(null, null)).isEqualTo("mailto");
+    }
+
+    @Test
+    void extractsRegistrableDomain() {
+        assertThat(parser.extractDomain("news@email.shop.example.com")).isEqualTo("example.com");
+        assertThat(parser.extractDomain("news@mail.shop.co.uk")).isEqualTo("shop.co.uk");
+        assertThat(parser.extractDomain("news@")).isNull();
+        assertThat(parser.extractDomain("no-at-sign")).isNull();
+        assertThat(parser.extractDomain(null)).isNull();
+    }
+}
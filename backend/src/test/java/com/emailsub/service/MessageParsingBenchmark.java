@@ -0,0 +1,210 @@
+package com.emailsub.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Allocation per message of the streaming MessageStreamParser against the previous path, which
+// decoded the whole body to a String and walked an ObjectMapper.readTree tree. The gmailBatch pair
+// measures the path full scans actually take: a 100-message multipart /batch response. Compare
+// gc.alloc.rate.norm (bytes per message) in the output of main.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageParsingBenchmark {
+
+    static final int MESSAGES_PER_PAGE = 100;
+    private static final String BATCH_BOUNDARY = "batch_zxcv";
+    private static final MediaType BATCH_CONTENT_TYPE =
+            MediaType.parseMediaType("multipart/mixed; boundary=" + BATCH_BOUNDARY);
+    private static final int CHUNK_SIZE = 8192; // typical Netty read size
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageStreamParser streamParser = new MessageStreamParser(objectMapper);
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private List<byte[]> graphPageChunks;
+    private byte[] graphPage;
+    private List<byte[]> gmailMessageChunks;
+    private byte[] gmailMessage;
+    private List<byte[]> gmailBatchChunks;
+    private byte[] gmailBatch;
+
+    @Setup
+    public void setUp() {
+        graphPage = graphPageJson(MESSAGES_PER_PAGE).getBytes(StandardCharsets.UTF_8);
+        graphPageChunks = chunks(graphPage);
+        gmailMessage = gmailMessageJson(0).getBytes(StandardCharsets.UTF_8);
+        gmailMessageChunks = chunks(gmailMessage);
+        gmailBatch = gmailBatchBody(MESSAGES_PER_PAGE).getBytes(StandardCharsets.UTF_8);
+        gmailBatchChunks = chunks(gmailBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_PAGE)
+    public void graphPageStream(Blackhole blackhole) {
+        MessageStreamParser.GraphPage page = streamParser.parseGraphPage(buffers(graphPageChunks)).block();
+        for (ScannedMessage message : page.messages) {
+            blackhole.consume(message.senderAddress);
+            blackhole.consume(message.listUnsubscribe);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_PAGE)
+    public void graphPageTree(Blackhole blackhole) throws Exception {
+        JsonNode root = objectMapper.readTree(new String(graphPage, StandardCharsets.UTF_8));
+        blackhole.consume(root.path("@odata.nextLink").asText(null));
+        for (JsonNode msg : root.path("value")) {
+            String unsubscribe = null;
+            for (JsonNode header : msg.path("internetMessageHeaders")) {
+                String name = header.path("name").asText().toLowerCase();
+                if (name.equals("list-unsubscribe")) unsubscribe = header.path("value").asText();
+            }
+            blackhole.consume(msg.path("sender").path("emailAddress").path("address").asText());
+            blackhole.consume(unsubscribe);
+        }
+    }
+
+    @Benchmark
+    public void gmailMessageStream(Blackhole blackhole) {
+        ScannedMessage message = streamParser.parseGmailMessage(buffers(gmailMessageChunks)).block();
+        blackhole.consume(message.from);
+        blackhole.consume(message.listUnsubscribe);
+    }
+
+    @Benchmark
+    public void gmailMessageTree(Blackhole blackhole) throws Exception {
+        JsonNode msg = objectMapper.readTree(new String(gmailMessage, StandardCharsets.UTF_8));
+        String from = null;
+        String unsubscribe = null;
+        for (JsonNode header : msg.path("payload").path("headers")) {
+            String name = header.path("name").asText();
+            if (name.equalsIgnoreCase("From")) from = header.path("value").asText();
+            if (name.equalsIgnoreCase("List-Unsubscribe")) unsubscribe = header.path("value").asText();
+        }
+        blackhole.consume(from);
+        blackhole.consume(unsubscribe);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_PAGE)
+    public void gmailBatchStream(Blackhole blackhole) {
+        GmailBatchParser.parse(BATCH_CONTENT_TYPE, buffers(gmailBatchChunks), streamParser::gmailMessageFeed)
+                .doOnNext(part -> {
+                    blackhole.consume(part.message.from);
+                    blackhole.consume(part.message.listUnsubscribe);
+                })
+                .blockLast();
+    }
+
+    // Whole response as one String, split on the boundary, each part body read as a tree
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_PAGE)
+    public void gmailBatchTree(Blackhole blackhole) throws Exception {
+        String response = new String(gmailBatch, StandardCharsets.UTF_8);
+        for (String part : response.split("--" + BATCH_BOUNDARY)) {
+            int bodyStart = part.indexOf("\r\n\r\n", part.indexOf("HTTP/1.1"));
+            if (bodyStart < 0) continue;
+            JsonNode msg = objectMapper.readTree(part.substring(bodyStart).strip());
+            for (JsonNode header : msg.path("payload").path("headers")) {
+                String name = header.path("name").asText();
+                if (name.equalsIgnoreCase("From")) blackhole.consume(header.path("value").asText());
+                if (name.equalsIgnoreCase("List-Unsubscribe")) blackhole.consume(header.path("value").asText());
+            }
+        }
+    }
+
+    private Flux<DataBuffer> buffers(List<byte[]> chunks) {
+        return Flux.fromIterable(chunks).map(bufferFactory::wrap);
+    }
+
+    private static List<byte[]> chunks(byte[] body) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int from = 0; from < body.length; from += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(body, from, Math.min(from + CHUNK_SIZE, body.length)));
+        }
+        return chunks;
+    }
+
+    // A /messages/delta page as requested by OutlookScanService: every message carries its full
+    // internetMessageHeaders, which is what makes these pages several MB
+    static String graphPageJson(int messages) {
+        StringBuilder json = new StringBuilder("{\"@odata.context\":\"https://graph.microsoft.com/v1.0/$metadata#Collection(message)\",\"value\":[");
+        for (int i = 0; i < messages; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"@odata.etag\":\"W/\\\"CQAAABYAAAB").append(i).append("\\\"\",")
+                .append("\"id\":\"AAMkAGI2TG93AAA").append(i).append("\",")
+                .append("\"receivedDateTime\":\"2024-03-0").append(i % 9 + 1).append("T10:15:00Z\",")
+                .append("\"subject\":\"Weekly deals #").append(i).append(" \\u2013 up to 50% off\",")
+                .append("\"sender\":{\"emailAddress\":{\"name\":\"Shop ").append(i % 20)
+                .append("\",\"address\":\"news@shop").append(i % 20).append(".example.com\"}},")
+                .append("\"internetMessageHeaders\":[");
+            for (int h = 0; h < 30; h++) {
+                json.append("{\"name\":\"Received\",\"value\":\"from mta").append(h)
+                    .append(".mail.example.net (10.0.0.").append(h).append(") by mx.example.org with ESMTPS id ")
+                    .append("abc").append(i).append(h).append("; Mon, 4 Mar 2024 10:15:0").append(h % 10)
+                    .append(" +0000\"},");
+            }
+            json.append("{\"name\":\"From\",\"value\":\"Shop ").append(i % 20).append(" <news@shop")
+                .append(i % 20).append(".example.com>\"},")
+                .append("{\"name\":\"List-Unsubscribe\",\"value\":\"<https://shop").append(i % 20)
+                .append(".example.com/u?id=").append(i).append(">, <mailto:unsub@shop").append(i % 20)
+                .append(".example.com>\"},")
+                .append("{\"name\":\"List-Unsubscribe-Post\",\"value\":\"List-Unsubscribe=One-Click\"}]}");
+        }
+        return json.append("],\"@odata.nextLink\":\"https://graph.microsoft.com/v1.0/me/mailFolders/inbox/messages/delta?$skiptoken=abc\"}")
+                .toString();
+    }
+
+    // A users.messages.get?format=metadata response as requested by GmailScanService
+    static String gmailMessageJson(int i) {
+        return "{\"id\":\"18e0c" + i + "\",\"threadId\":\"18e0c" + i + "\",\"labelIds\":[\"CATEGORY_PROMOTIONS\",\"INBOX\"],"
+                + "\"snippet\":\"Our biggest sale of the season starts now\",\"payload\":{\"partId\":\"\",\"headers\":["
+                + "{\"name\":\"From\",\"value\":\"\\\"Shop, Inc.\\\" <news@shop.example.com>\"},"
+                + "{\"name\":\"Subject\",\"value\":\"Weekly deals #" + i + "\"},"
+                + "{\"name\":\"Date\",\"value\":\"Mon, 4 Mar 2024 10:15:00 +0000\"},"
+                + "{\"name\":\"List-Unsubscribe\",\"value\":\"<https://shop.example.com/u?id=" + i + ">, <mailto:unsub@shop.example.com>\"},"
+                + "{\"name\":\"List-Unsubscribe-Post\",\"value\":\"List-Unsubscribe=One-Click\"}]},"
+                + "\"sizeEstimate\":48213,\"historyId\":\"9876543\",\"internalDate\":\"1709547300000\"}";
+    }
+
+    // A Gmail /batch response to GmailScanService.fetchBatch: one 200 part per message
+    static String gmailBatchBody(int messages) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            body.append("--").append(BATCH_BOUNDARY).append("\r\n")
+                .append("Content-Type: application/http\r\n")
+                .append("Content-ID: <response-18e0c").append(i).append(">\r\n\r\n")
+                .append("HTTP/1.1 200 OK\r\n")
+                .append("Content-Type: application/json; charset=UTF-8\r\n")
+                .append("Vary: Origin\r\n\r\n")
+                .append(gmailMessageJson(i)).append("\r\n");
+        }
+        return body.append("--").append(BATCH_BOUNDARY).append("--\r\n").toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MessageParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
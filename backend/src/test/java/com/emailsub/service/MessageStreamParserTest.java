@@ -0,0 +1,130 @@
+package com.emailsub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageStreamParserTest {
+
+    private final MessageStreamParser parser = new MessageStreamParser(new ObjectMapper());
+
+    @Test
+    void parsesGraphPageAcrossArbitraryChunkBoundaries() {
+        byte[] body = MessageParsingBenchmark.graphPageJson(3).getBytes(StandardCharsets.UTF_8);
+
+        for (int chunkSize : new int[]{1, 7, 64, body.length}) {
+            MessageStreamParser.GraphPage page = parser.parseGraphPage(buffers(body, chunkSize)).block();
+
+            assertThat(page.messages).hasSize(3);
+            assertThat(page.nextLink).endsWith("$skiptoken=abc");
+            assertThat(page.deltaLink).isNull();
+
+            ScannedMessage first = page.messages.get(0);
+            assertThat(first.senderAddress).isEqualTo("news@shop0.example.com");
+            assertThat(first.senderName).isEqualTo("Shop 0");
+            assertThat(first.subject).isEqualTo("Weekly deals #0 – up to 50% off");
+            assertThat(first.date).isEqualTo("2024-03-01T10:15:00Z");
+            assertThat(first.from).isEqualTo("Shop 0 <news@shop0.example.com>");
+            assertThat(first.listUnsubscribe)
+                    .isEqualTo("<https://shop0.example.com/u?id=0>, <mailto:unsub@shop0.example.com>");
+            assertThat(first.listUnsubscribePost).isEqualTo("List-Unsubscribe=One-Click");
+        }
+    }
+
+    @Test
+    void graphMessageFieldsWinOverRawSubjectAndDateHeaders() {
+        String json = "{\"value\":[{\"subject\":\"Resource subject\",\"receivedDateTime\":\"2024-01-01T00:00:00Z\","
+                + "\"internetMessageHeaders\":[{\"name\":\"Subject\",\"value\":\"=?utf-8?Q?raw?=\"},"
+                + "{\"name\":\"Date\",\"value\":\"Mon, 1 Jan 2024\"}]}],"
+                + "\"@odata.deltaLink\":\"https://graph.microsoft.com/delta?token=1\"}";
+
+        MessageStreamParser.GraphPage page = parser.parseGraphPage(buffers(json.getBytes(StandardCharsets.UTF_8), 5)).block();
+
+        assertThat(page.messages).hasSize(1);
+        assertThat(page.messages.get(0).subject).isEqualTo("Resource subject");
+        assertThat(page.messages.get(0).date).isEqualTo("2024-01-01T00:00:00Z");
+        assertThat(page.messages.get(0).receivedAt).isEqualTo(Instant.parse("2024-01-01T00:00:00Z"));
+        assertThat(page.deltaLink).isEqualTo("https://graph.microsoft.com/delta?token=1");
+        assertThat(page.nextLink).isNull();
+    }
+
+    @Test
+    void parsesGmailMessageInOneOrManyChunks() {
+        String json = MessageParsingBenchmark.gmailMessageJson(42);
+
+        for (int chunkSize : new int[]{3, json.length()}) {
+            ScannedMessage message = gmail(json, chunkSize);
+
+            assertThat(message.from).isEqualTo("\"Shop, Inc.\" <news@shop.example.com>");
+            assertThat(message.subject).isEqualTo("Weekly deals #42");
+            assertThat(message.date).isEqualTo("Mon, 4 Mar 2024 10:15:00 +0000");
+            assertThat(message.listUnsubscribe)
+                    .isEqualTo("<https://shop.example.com/u?id=42>, <mailto:unsub@shop.example.com>");
+            assertThat(message.listUnsubscribePost).isEqualTo("List-Unsubscribe=One-Click");
+        }
+    }
+
+    @Test
+    void gmailInternalDateIsTheReceivedTime() {
+        String json = "{\"id\":\"m1\",\"internalDate\":\"1709547300000\","
+                + "\"payload\":{\"headers\":[{\"name\":\"Date\",\"value\":\"not a date\"}]}}";
+
+        assertThat(gmail(json).receivedAt).isEqualTo(Instant.ofEpochMilli(1709547300000L));
+        assertThat(gmail("{\"internalDate\":\"soon\"}").receivedAt).isNull();
+    }
+
+    @Test
+    void ignoresHeadersOutsidePayload() {
+        String json = "{\"headers\":[{\"name\":\"From\",\"value\":\"wrong@example.com\"}],"
+                + "\"payload\":{\"parts\":[{\"headers\":[{\"name\":\"From\",\"value\":\"part@example.com\"}]}],"
+                + "\"headers\":[{\"name\":\"from\",\"value\":\"right@example.com\"},{\"name\":\"X-Other\",\"value\":\"x\"}]}}";
+
+        ScannedMessage message = gmail(json);
+
+        assertThat(message.from).isEqualTo("right@example.com");
+        assertThat(message.listUnsubscribe).isNull();
+    }
+
+    @Test
+    void headerNamesMatchInAnyCaseAndInEitherOrder() {
+        String json = "{\"value\":[{\"subject\":\"s\",\"internetMessageHeaders\":["
+                + "{\"name\":\"X-Mailer\",\"value\":\"skipped\"},"
+                + "{\"value\":\"<https://shop.example.com/u>\",\"name\":\"LIST-UNSUBSCRIBE\"},"
+                + "{\"value\":\"stray\",\"name\":\"Received\"},"
+                + "{\"name\":\"from\",\"value\":\"Shop <news@shop.example.com>\"}]}]}";
+
+        ScannedMessage message = parser.parseGraphPage(buffers(json.getBytes(StandardCharsets.UTF_8), 4))
+                .block().messages.get(0);
+
+        assertThat(message.listUnsubscribe).isEqualTo("<https://shop.example.com/u>");
+        assertThat(message.from).isEqualTo("Shop <news@shop.example.com>");
+        assertThat(message.listUnsubscribePost).isNull();
+    }
+
+    private ScannedMessage gmail(String json) {
+        return gmail(json, 16);
+    }
+
+    private ScannedMessage gmail(String json, int chunkSize) {
+        return parser.parseGmailMessage(buffers(json.getBytes(StandardCharsets.UTF_8), chunkSize)).block();
+    }
+
+    private static Flux<DataBuffer> buffers(byte[] body, int chunkSize) {
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int from = 0; from < body.length; from += chunkSize) {
+            chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(body, from, Math.min(from + chunkSize, body.length))));
+        }
+        return Flux.fromIterable(chunks);
+    }
+}
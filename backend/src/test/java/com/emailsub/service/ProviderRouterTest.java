@@ -0,0 +1,78 @@
+package com.emailsub.service;
+
+import com.emailsub.service.ProviderRouter.Provider;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderRouterTest {
+
+    private static final Duration OPEN = Duration.ofMillis(200);
+
+    private final Provider first = provider("first");
+    private final Provider second = provider("second");
+    private final ProviderRouter router = new ProviderRouter(List.of(first, second), Duration.ofSeconds(1), 2, OPEN,
+            Duration.ofMillis(10), Duration.ofSeconds(5));
+
+    @Test
+    void acquireFollowsFallbackOrder() throws InterruptedException {
+        assertThat(router.acquire(Set.of())).isSameAs(first);
+        assertThat(router.acquire(Set.of(first))).isSameAs(second);
+        assertThat(router.acquire(Set.of(first, second))).isNull();
+    }
+
+    @Test
+    void openCircuitIsSkipped() throws InterruptedException {
+        fail(first, 2);
+
+        assertThat(router.allowsCall(first)).isFalse();
+        assertThat(router.acquire(Set.of())).isSameAs(second);
+        assertThat(router.nanosUntilAnyAllowed()).isZero();
+    }
+
+    @Test
+    void reportsWhenTheFirstCircuitGoesHalfOpen() throws InterruptedException {
+        fail(first, 2);
+        fail(second, 2);
+
+        assertThat(router.acquire(Set.of())).isNull();
+        assertThat(router.nanosUntilAnyAllowed()).isPositive().isLessThanOrEqualTo(OPEN.toNanos());
+
+        Thread.sleep(OPEN.toMillis() + 50);
+        assertThat(router.nanosUntilAnyAllowed()).isZero();
+        assertThat(router.acquire(Set.of())).isSameAs(first);
+    }
+
+    @Test
+    void successClosesAHalfOpenCircuit() throws InterruptedException {
+        fail(first, 2);
+        Thread.sleep(OPEN.toMillis() + 50);
+
+        ProviderRouter.Routed<String> routed = router.call(first, new HashSet<>(Set.of(first, second)),
+                p -> Mono.just("News"), value -> true);
+
+        assertThat(routed.value()).isEqualTo("News");
+        fail(first, 1);
+        assertThat(router.allowsCall(first)).isTrue(); // one failure after closing is below the threshold
+    }
+
+    private void fail(Provider provider, int times) {
+        for (int i = 0; i < times; i++) {
+            // The other provider counts as tried, so no hedge is sent
+            Set<Provider> tried = new HashSet<>(Set.of(first, second));
+            ProviderRouter.Routed<String> routed = router.call(provider, tried,
+                    p -> Mono.error(new IllegalStateException("unavailable")), value -> true);
+            assertThat(routed.value()).isNull();
+        }
+    }
+
+    private static Provider provider(String name) {
+        return new Provider(name, new TokenBucket(6000), (prompt, maxTokens) -> Mono.just("Other"));
+    }
+}
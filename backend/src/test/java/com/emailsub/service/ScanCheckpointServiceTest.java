@@ -0,0 +1,103 @@
+package com.emailsub.service;
+
+import com.emailsub.model.ScanCheckpoint;
+import com.emailsub.model.User;
+import com.emailsub.repository.ScanCheckpointRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ScanCheckpointServiceTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID ROW_ID = UUID.randomUUID();
+
+    private final ScanCheckpointRepository repository = mock(ScanCheckpointRepository.class);
+    private final ScanCheckpointService service = new ScanCheckpointService(repository, new ObjectMapper());
+    private final User user = User.builder().id(USER_ID).email("alice@example.com").build();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "checkpointEveryPages", 5);
+        ReflectionTestUtils.setField(service, "checkpointMaxAgeHours", 24);
+        ReflectionTestUtils.setField(service, "checkpointLeaseMinutes", 30);
+    }
+
+    @Test
+    void secondScanIsTurnedAwayWhileTheFirstOwnsTheRow() {
+        when(repository.claim(any(), eq(USER_ID), eq("gmail"), anyString(), any(), any(), any())).thenReturn(0);
+
+        assertThat(service.resumeOrStart(user, "gmail", "full")).isNull();
+
+        verify(repository, never()).findByUserIdAndAccountType(any(), any());
+        verify(repository, never()).discard(any(), any());
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void recentCheckpointIsResumed() {
+        ScanCheckpoint stored = claimed(LocalDateTime.now().minusHours(1));
+
+        ScanCheckpoint checkpoint = service.resumeOrStart(user, "gmail", "full");
+
+        assertThat(checkpoint).isSameAs(stored);
+        assertThat(checkpoint.getPageToken()).isEqualTo("page-7");
+        assertThat(checkpoint.getPagesProcessed()).isEqualTo(7);
+    }
+
+    @Test
+    void staleCheckpointStartsOverOnTheSameRow() {
+        claimed(LocalDateTime.now().minusHours(48));
+
+        ScanCheckpoint checkpoint = service.resumeOrStart(user, "gmail", "delta");
+
+        assertThat(checkpoint.getId()).isEqualTo(ROW_ID);
+        assertThat(checkpoint.getSyncType()).isEqualTo("delta");
+        assertThat(checkpoint.getPageToken()).isNull();
+        assertThat(checkpoint.getSenderMap()).isNull();
+        assertThat(checkpoint.getPagesProcessed()).isZero();
+        verify(repository, never()).discard(any(), any());
+    }
+
+    @Test
+    void runWhoseLeaseWasTakenOverCannotWriteTheRow() {
+        ScanCheckpoint checkpoint = claimed(LocalDateTime.now().minusHours(1));
+        when(repository.renewLease(eq(ROW_ID), eq(checkpoint.getLockedBy()), any())).thenReturn(0);
+
+        assertThatThrownBy(() -> service.save(checkpoint, new HashMap<>(), null))
+                .isInstanceOf(IllegalStateException.class);
+        verify(repository, never()).save(any());
+
+        service.clear(checkpoint);
+        verify(repository).discard(ROW_ID, checkpoint.getLockedBy());
+    }
+
+    // The row as claim left it: owned by the owner id claim was called with
+    private ScanCheckpoint claimed(LocalDateTime updatedAt) {
+        ScanCheckpoint stored = ScanCheckpoint.builder()
+                .id(ROW_ID).accountType("gmail").syncType("full")
+                .pageToken("page-7").senderMap("{}").emailsScanned(700).pagesProcessed(7)
+                .updatedAt(updatedAt)
+                .build();
+        when(repository.claim(any(), eq(USER_ID), eq("gmail"), anyString(), any(), any(), any()))
+                .thenAnswer(call -> {
+                    stored.setLockedBy(call.getArgument(5));
+                    return 1;
+                });
+        when(repository.findByUserIdAndAccountType(USER_ID, "gmail")).thenReturn(Optional.of(stored));
+        return stored;
+    }
+}
@@ -0,0 +1,70 @@
+package com.emailsub.service;
+
+import com.emailsub.model.CommunitySender;
+import com.emailsub.model.User;
+import com.emailsub.model.UserCorrection;
+import com.emailsub.model.UserSubscription;
+import com.emailsub.repository.UserCorrectionRepository;
+import com.emailsub.repository.UserSubscriptionRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SubscriptionServiceTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+    private static final UUID SUBSCRIPTION_ID = UUID.randomUUID();
+    private static final UUID SENDER_ID = UUID.randomUUID();
+
+    private final UserSubscriptionRepository subscriptionRepository = mock(UserSubscriptionRepository.class);
+    private final UserCorrectionRepository correctionRepository = mock(UserCorrectionRepository.class);
+    private final DashboardSummaryService dashboardSummaryService = mock(DashboardSummaryService.class);
+    private final CorrectionConsensusService consensusService = mock(CorrectionConsensusService.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final SubscriptionService service = new SubscriptionService(subscriptionRepository, correctionRepository,
+            dashboardSummaryService, consensusService, eventPublisher);
+
+    @Test
+    void correctionVotesAndLeavesTheConsensusCheckToTheCommit() {
+        UserSubscription sub = subscription(CommunitySender.builder().id(SENDER_ID).category("Shopping").build());
+
+        service.correctCategory(USER_ID, SUBSCRIPTION_ID, "Finance");
+
+        assertThat(sub.getEffectiveCategory()).isEqualTo("Finance");
+        InOrder inOrder = inOrder(subscriptionRepository, correctionRepository, consensusService, eventPublisher);
+        inOrder.verify(subscriptionRepository).save(sub);
+        inOrder.verify(correctionRepository).save(any(UserCorrection.class));
+        inOrder.verify(consensusService).recordVote(SENDER_ID, "Finance");
+        inOrder.verify(eventPublisher).publishEvent(new CategoryCorrectedEvent(SENDER_ID, "Finance"));
+        verifyNoMoreInteractions(consensusService);
+        verify(dashboardSummaryService).onCategoryChanged(sub, "Shopping");
+    }
+
+    @Test
+    void unlinkedSubscriptionPublishesNothing() {
+        UserSubscription sub = subscription(null);
+
+        service.correctCategory(USER_ID, SUBSCRIPTION_ID, "Finance");
+
+        verifyNoInteractions(correctionRepository, consensusService, eventPublisher);
+        verify(dashboardSummaryService).onCategoryChanged(sub, "Shopping");
+    }
+
+    private UserSubscription subscription(CommunitySender sender) {
+        UserSubscription sub = UserSubscription.builder()
+                .id(SUBSCRIPTION_ID)
+                .user(User.builder().id(USER_ID).build())
+                .communitySender(sender)
+                .effectiveCategory("Shopping")
+                .build();
+        when(subscriptionRepository.findById(SUBSCRIPTION_ID)).thenReturn(Optional.of(sub));
+        return sub;
+    }
+}
@@ -0,0 +1,107 @@
+package com.emailsub.service;
+
+import com.emailsub.migration.V17__normalize_sender_domains;
+import com.emailsub.model.User;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// email_count_30days through a full scan, a delta sync and the daily roll-forward. Needs Docker.
+@Testcontainers(disabledWithoutDocker = true)
+class SubscriptionUpsertServiceTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private JdbcTemplate jdbc;
+    private SubscriptionUpsertService service;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        DomainNormalizer normalizer = new DomainNormalizer();
+        ReflectionTestUtils.setField(normalizer, "subdomainOverrides", Set.of());
+        normalizer.load();
+        Flyway flyway = Flyway.configure().dataSource(dataSource).cleanDisabled(false)
+                .javaMigrations(new V17__normalize_sender_domains(normalizer))
+                .load();
+        flyway.clean();
+        flyway.migrate();
+        jdbc = new JdbcTemplate(dataSource);
+
+        CommunitySenderCache cache = mock(CommunitySenderCache.class);
+        when(cache.getAll(any())).thenReturn(Map.of());
+        service = new SubscriptionUpsertService(jdbc, cache, mock(AiCategorizationService.class),
+                mock(DashboardSummaryService.class));
+        ReflectionTestUtils.setField(service, "upsertBatchSize", 500);
+
+        user = User.builder().id(UUID.randomUUID()).email("reader@example.com").build();
+        jdbc.update("INSERT INTO users (id, email) VALUES (?, ?)", user.getId(), user.getEmail());
+        jdbc.update("INSERT INTO dashboard_summaries (user_id, summary) VALUES (?, '{}')", user.getId());
+    }
+
+    @Test
+    void recentCountFollowsTheWindow() {
+        Instant now = Instant.now();
+        GmailScanService.SubscriptionData full = sender(now.minus(Duration.ofDays(2)), 3);
+        full.count(now.minus(Duration.ofDays(40))); // outside the window, total only
+        service.upsertAll(user, List.of(full), "gmail", false);
+        assertThat(counts()).containsExactly(4, 3);
+
+        // A delta sync adds to both, but the 30-day count stays a sum over days
+        service.upsertAll(user, List.of(sender(now, 2)), "gmail", true);
+        assertThat(counts()).containsExactly(6, 5);
+
+        // The three messages from two days ago age out of the window
+        jdbc.update("UPDATE subscription_daily_counts SET day = day - 30 WHERE email_count = 3");
+        service.rollRecentCounts();
+        assertThat(counts()).containsExactly(6, 2);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM subscription_daily_counts", Integer.class)).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT stale FROM dashboard_summaries", Boolean.class)).isTrue();
+    }
+
+    @Test
+    void fullScanReplacesTheDays() {
+        Instant now = Instant.now();
+        service.upsertAll(user, List.of(sender(now, 4)), "gmail", true);
+        service.upsertAll(user, List.of(sender(now.minus(Duration.ofDays(1)), 1)), "gmail", false);
+
+        assertThat(counts().get(1)).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM subscription_daily_counts", Integer.class)).isEqualTo(1);
+    }
+
+    private List<Integer> counts() {
+        return jdbc.queryForObject("SELECT total_email_count, email_count_30days FROM user_subscriptions",
+                (rs, rowNum) -> List.of(rs.getInt(1), rs.getInt(2)));
+    }
+
+    private static GmailScanService.SubscriptionData sender(Instant receivedAt, int messages) {
+        GmailScanService.SubscriptionData data = new GmailScanService.SubscriptionData();
+        data.senderEmail = "news@shop.com";
+        data.senderName = "Shop";
+        data.domain = "shop.com";
+        for (int i = 0; i < messages; i++) data.count(receivedAt);
+        return data;
+    }
+}
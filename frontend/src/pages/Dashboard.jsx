@@ -32,11 +32,13 @@ export default function Dashboard() {
   const [unsubscribing, setUnsubscribing] = useState({})
   const [unsubscribeResults, setUnsubscribeResults] = useState({})
   const [activeFilter, setActiveFilter] = useState('all')
+  const [morePages, setMorePages] = useState({})
 
   const loadDashboard = useCallback(async () => {
     try {
       const { data } = await subscriptionApi.getDashboard()
       setDashboard(data)
+      setMorePages({})
     } catch (e) {
       console.error('Failed to load dashboard', e)
     }
@@ -91,6 +93,23 @@ export default function Dashboard() {
     setExpandedCategories(p => ({ ...p, [cat]: !p[cat] }))
   }
 
+  // The dashboard only carries the top senders of each category, further pages are loaded
+  // on demand starting from the cursor the dashboard hands out
+  const loadMore = async (cat) => {
+    const loaded = morePages[cat]
+    const cursor = loaded ? loaded.cursor : dashboard.cursors?.[cat]
+    if (!cursor) return
+    try {
+      const { data } = await subscriptionApi.getByCategory(cat, { cursor })
+      setMorePages(p => ({
+        ...p,
+        [cat]: { rows: [...(p[cat]?.rows || []), ...data.subscriptions], cursor: data.nextCursor }
+      }))
+    } catch (e) {
+      console.error('Failed to load category', e)
+    }
+  }
+
   const filteredCategories = dashboard?.categories
     ? Object.entries(dashboard.categories).filter(([cat]) =>
         activeFilter === 'all' || cat === activeFilter
@@ -248,7 +267,7 @@ export default function Dashboard() {
                 >
                   <Icon className="w-3.5 h-3.5" />
                   {cat}
-                  <span className="text-xs opacity-70">({(dashboard.categories[cat] || []).length})</span>
+                  <span className="text-xs opacity-70">({dashboard.categoryCounts?.[cat]?.total || 0})</span>
                 </button>
               )
             })}
@@ -258,11 +277,15 @@ export default function Dashboard() {
         {/* Subscription categories */}
         {filteredCategories.length > 0 && (
           <div className="space-y-3">
-            {filteredCategories.map(([category, subs]) => {
+            {filteredCategories.map(([category, topSubs]) => {
               const meta = CATEGORY_META[category] || CATEGORY_META.Other
               const Icon = meta.icon
               const isExpanded = expandedCategories[category] !== false // default expanded
-              const activeSubs = subs.filter(s => s.status === 'active')
+              const counts = dashboard.categoryCounts?.[category] || {}
+              const more = morePages[category]
+              const subs = more ? [...topSubs, ...more.rows] : topSubs
+              const hiddenCount = (more ? more.cursor : dashboard.cursors?.[category])
+                ? (counts.total || 0) - subs.length : 0
 
               return (
                 <div key={category} className="bg-white rounded-xl border border-gray-200 overflow-hidden">
@@ -278,7 +301,7 @@ export default function Dashboard() {
                       <div className="text-left">
                         <div className="font-semibold text-gray-900">{category}</div>
                         <div className="text-xs text-gray-400">
-                          {activeSubs.length} active · {subs.length - activeSubs.length} unsubscribed
+                          {counts.active || 0} active · {(counts.total || 0) - (counts.active || 0)} unsubscribed
                         </div>
                       </div>
                     </div>
@@ -300,6 +323,14 @@ export default function Dashboard() {
                           result={unsubscribeResults[sub.id]}
                         />
                       ))}
+                      {hiddenCount > 0 && (
+                        <button
+                          onClick={() => loadMore(category)}
+                          className="w-full text-sm text-blue-600 hover:bg-gray-50 py-3 transition-colors"
+                        >
+                          Show {hiddenCount} more
+                        </button>
+                      )}
                     </div>
                   )}
                 </div>
@@ -35,7 +35,8 @@ export const authApi = {
 
 export const subscriptionApi = {
   getDashboard: () => api.get('/subscriptions/dashboard'),
-  getByCategory: (category) => api.get(`/subscriptions/category/${category}`),
+  list: (params) => api.get('/subscriptions', { params }),
+  getByCategory: (category, params) => api.get(`/subscriptions/category/${category}`, { params }),
   scanGmail: () => api.post('/subscriptions/scan/gmail'),
   scanOutlook: () => api.post('/subscriptions/scan/outlook'),
   scanAll: () => api.post('/subscriptions/scan/all'),